@@ -16,15 +16,13 @@
  */
 package org.geotools.data.ngi;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.geotools.util.logging.Logging;
 
-import com.vividsolutions.jts.geom.Coordinate;
-
 /**
  * Abstract NGI Reader
  * 
@@ -36,18 +34,17 @@ import com.vividsolutions.jts.geom.Coordinate;
 public abstract class AbstractNGIReader {
     protected static final Logger LOGGER = Logging.getLogger(AbstractNGIReader.class);
 
-    protected String seekLayer(BufferedReader reader, String layerName) {
+    protected String seekLayer(NGIScanner reader, String layerName) {
         try {
-            String line = reader.readLine();
-            while (line != null) {
-                if (line.equalsIgnoreCase("$LAYER_NAME")) {
-                    String name = reader.readLine(); // "건물" => 건물
+            while (reader.nextLine()) {
+                if (reader.lineEquals("$LAYER_NAME")) {
+                    reader.nextLine();
+                    String name = reader.getLine(); // "건물" => 건물
                     name = name.substring(1, name.length() - 1);
                     if (name.equalsIgnoreCase(layerName)) {
                         return name;
                     }
                 }
-                line = reader.readLine();
             }
         } catch (IOException e) {
             LOGGER.log(Level.FINER, e.getMessage(), e);
@@ -55,14 +52,12 @@ public abstract class AbstractNGIReader {
         return null;
     }
 
-    protected boolean seekPosition(BufferedReader reader, String cat) {
+    protected boolean seekPosition(NGIScanner reader, String cat) {
         try {
-            String line = reader.readLine();
-            while (line != null) {
-                if (line.toUpperCase().startsWith(cat)) {
+            while (reader.nextLine()) {
+                if (reader.lineStartsWith(cat)) {
                     return true;
                 }
-                line = reader.readLine();
             }
         } catch (IOException e) {
             LOGGER.log(Level.FINER, e.getMessage(), e);
@@ -70,6 +65,48 @@ public abstract class AbstractNGIReader {
         return false;
     }
 
+    protected void readLine(NGIScanner reader) throws IOException {
+        if (!reader.nextLine()) {
+            throw new IOException("Unexpected end of file");
+        }
+    }
+
+    // 5, NUMPARTS 2
+    protected int readInt(NGIScanner reader) throws IOException {
+        readLine(reader);
+        return reader.getInt();
+    }
+
+    /**
+     * Reads numofPoints "x y" lines(150609.210000 203279.010000) into the ordinate buffer(x0, y0,
+     * x1, y1...).
+     *
+     * @return the ordinate buffer, grown if needed
+     */
+    protected double[] readCoordinates(NGIScanner reader, double[] ordinates, int numofPoints)
+            throws IOException {
+        return readCoordinates(reader, ordinates, 0, numofPoints);
+    }
+
+    /**
+     * Reads numofPoints coordinates into the ordinate buffer after the first start points.
+     *
+     * @return the ordinate buffer, grown if needed
+     */
+    protected double[] readCoordinates(NGIScanner reader, double[] ordinates, int start,
+            int numofPoints) throws IOException {
+        final int length = (start + numofPoints) * 2;
+        if (ordinates.length < length) {
+            ordinates = Arrays.copyOf(ordinates, Math.max(length, ordinates.length * 2));
+        }
+
+        for (int index = start; index < start + numofPoints; index++) {
+            readLine(reader);
+            reader.getCoordinate(ordinates, index * 2);
+        }
+        return ordinates;
+    }
+
     protected int parseInteger(String text) {
         return Integer.parseInt(text.trim());
     }
@@ -77,11 +114,4 @@ public abstract class AbstractNGIReader {
     protected double parseDouble(String text) {
         return Double.parseDouble(text.trim());
     }
-
-    protected Coordinate parseCoordinate(String text) {
-        String[] coords = text.split(" ");
-        double x = Double.parseDouble(coords[0].trim());
-        double y = Double.parseDouble(coords[1].trim());
-        return new Coordinate(x, y);
-    }
 }
@@ -0,0 +1,229 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.util.Converters;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+/**
+ * NDA record decoder compiled for a feature type: the NDA field and the value parser of each
+ * attribute are resolved once, so a record is split in a single pass and each field is parsed by
+ * the parser of its type(integer, double, string) without Converters lookups.
+ * <p>
+ * With a {@link NGIValueDictionary} the values are interned: repeated values are looked up by
+ * their raw bytes instead of being parsed again, and features share the same instance. Each
+ * attribute samples its first lookups and stops interning when most values are distinct(UFID,
+ * area, ...).
+ * </p>
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGIAttributeDecoder {
+    protected static final Logger LOGGER = Logging.getLogger(NGIAttributeDecoder.class);
+
+    static final int STRING = 0;
+
+    static final int INTEGER = 1;
+
+    static final int LONG = 2;
+
+    static final int DOUBLE = 3;
+
+    // other bindings are converted through Converters
+    static final int OTHER = 4;
+
+    // attribute index in the feature type
+    private final int[] attributes;
+
+    // NDA field index of each attribute
+    private final int[] fields;
+
+    private final int[] types;
+
+    private final Class<?>[] bindings;
+
+    // the fields after the last decoded one are not split
+    private final int maxFields;
+
+    // dictionary lookups sampled per attribute before deciding to keep interning it
+    static final int SAMPLE_SIZE = 1024;
+
+    private final NGIValueDictionary dictionary;
+
+    private final boolean[] interned;
+
+    private final int[] lookups;
+
+    private final int[] hits;
+
+    /**
+     * @param schema the feature type of the decoded features
+     * @param layerSchema the layer schema, its non geometry attributes are the NDA fields
+     */
+    public NGIAttributeDecoder(SimpleFeatureType schema, SimpleFeatureType layerSchema) {
+        this(schema, layerSchema, null);
+    }
+
+    /**
+     * @param schema the feature type of the decoded features
+     * @param layerSchema the layer schema, its non geometry attributes are the NDA fields
+     * @param dictionary dictionary of the layer values, null to not intern the values
+     */
+    public NGIAttributeDecoder(SimpleFeatureType schema, SimpleFeatureType layerSchema,
+            NGIValueDictionary dictionary) {
+        List<String> columns = new ArrayList<String>();
+        for (AttributeDescriptor desc : layerSchema.getAttributeDescriptors()) {
+            if (!(desc instanceof GeometryDescriptor)) {
+                columns.add(desc.getLocalName());
+            }
+        }
+
+        List<AttributeDescriptor> decoded = new ArrayList<AttributeDescriptor>();
+        List<Integer> attributeIndexes = new ArrayList<Integer>();
+        List<Integer> fieldIndexes = new ArrayList<Integer>();
+        for (int index = 0; index < schema.getAttributeCount(); index++) {
+            AttributeDescriptor desc = schema.getDescriptor(index);
+            final int field = desc instanceof GeometryDescriptor ? -1 : columns.indexOf(desc
+                    .getLocalName());
+            if (field != -1) {
+                decoded.add(desc);
+                attributeIndexes.add(Integer.valueOf(index));
+                fieldIndexes.add(Integer.valueOf(field));
+            }
+        }
+
+        final int size = decoded.size();
+        this.attributes = new int[size];
+        this.fields = new int[size];
+        this.types = new int[size];
+        this.bindings = new Class<?>[size];
+        this.dictionary = dictionary;
+        this.interned = new boolean[size];
+        this.lookups = new int[size];
+        this.hits = new int[size];
+
+        int max = -1;
+        for (int index = 0; index < size; index++) {
+            attributes[index] = attributeIndexes.get(index).intValue();
+            fields[index] = fieldIndexes.get(index).intValue();
+            bindings[index] = decoded.get(index).getType().getBinding();
+            types[index] = getType(bindings[index]);
+            interned[index] = dictionary != null && types[index] != OTHER;
+            max = Math.max(max, fields[index]);
+        }
+        this.maxFields = max + 1;
+    }
+
+    /**
+     * Returns the value type(STRING, INTEGER, LONG, DOUBLE or OTHER) of the attribute binding
+     */
+    static int getType(Class<?> binding) {
+        if (binding.isAssignableFrom(String.class)) {
+            return STRING;
+        } else if (binding == Integer.class) {
+            return INTEGER;
+        } else if (binding == Long.class) {
+            return LONG;
+        } else if (binding == Double.class) {
+            return DOUBLE;
+        }
+        return OTHER;
+    }
+
+    /**
+     * Returns true if no attribute is read from the NDA file
+     */
+    public boolean isEmpty() {
+        return attributes.length == 0;
+    }
+
+    /**
+     * Decodes the current line of the scanner, a NDA record, into the feature
+     */
+    public void decode(NGIScanner scanner, SimpleFeature feature) {
+        // 7371, "영광읍", "행정지명", "법정명", "1000035610069H00410000000000073716"
+        final int fieldCount = scanner.splitQuotedLine(',', maxFields);
+        for (int index = 0; index < attributes.length; index++) {
+            final int field = fields[index];
+            if (field < fieldCount) {
+                feature.setAttribute(attributes[index], decode(scanner, field, index));
+            }
+        }
+    }
+
+    private Object decode(NGIScanner scanner, int field, int index) {
+        if (!interned[index]) {
+            return parse(scanner, field, index);
+        }
+
+        Object value = scanner.getInternedField(dictionary, field, types[index]);
+        if (value != null) {
+            hits[index]++;
+        } else {
+            value = scanner.internField(dictionary, field, types[index],
+                    parse(scanner, field, index));
+        }
+
+        if (++lookups[index] == SAMPLE_SIZE && hits[index] * 2 < SAMPLE_SIZE) {
+            // mostly distinct values
+            interned[index] = false;
+        }
+        return value;
+    }
+
+    private Object parse(NGIScanner scanner, int field, int index) {
+        final int type = types[index];
+        if (type == STRING) {
+            return scanner.getStringField(field);
+        } else if (scanner.isEmptyField(field)) {
+            return null;
+        }
+
+        try {
+            switch (type) {
+            case INTEGER:
+                final long value = scanner.getLongField(field);
+                if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                    return Integer.valueOf((int) value);
+                }
+                break;
+            case LONG:
+                return Long.valueOf(scanner.getLongField(field));
+            case DOUBLE:
+                return Double.valueOf(scanner.getDoubleField(field));
+            default:
+                break;
+            }
+        } catch (NumberFormatException e) {
+            // "1.0E3", " 12 ", ...
+            LOGGER.log(Level.FINEST, e.getMessage(), e);
+        }
+        return Converters.convert(scanner.getStringField(field), bindings[index]);
+    }
+}
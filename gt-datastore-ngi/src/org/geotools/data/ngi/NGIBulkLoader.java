@@ -0,0 +1,494 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.jdbc.AutoGeneratedPrimaryKeyColumn;
+import org.geotools.jdbc.JDBCDataStore;
+import org.geotools.jdbc.PreparedStatementSQLDialect;
+import org.geotools.jdbc.PrimaryKeyColumn;
+import org.geotools.jdbc.SQLDialect;
+import org.geotools.jdbc.SequencedPrimaryKeyColumn;
+import org.geotools.referencing.CRS;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Loads NGI layers into a JDBC DataStore(Altibase, Tibero, Kairos) with batched prepared INSERT
+ * statements. The features are parsed on a background thread while the batches are bound and
+ * executed, the geometries are bound as WKB by the prepared statement dialect.
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGIBulkLoader {
+    protected static final Logger LOGGER = Logging.getLogger(NGIBulkLoader.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    public static final int DEFAULT_COMMIT_SIZE = 10000;
+
+    public static final int DEFAULT_QUEUE_SIZE = 4096;
+
+    // the dialects append GeomFromWKB(?) for non null geometries, ? for null geometries
+    private static final Geometry NOT_NULL = new GeometryFactory().createPoint(new Coordinate());
+
+    private final NGIDataStore source;
+
+    private final JDBCDataStore target;
+
+    private final PreparedStatementSQLDialect dialect;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private int commitSize = DEFAULT_COMMIT_SIZE;
+
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+
+    public NGIBulkLoader(NGIDataStore source, JDBCDataStore target) {
+        SQLDialect sqlDialect = target.getSQLDialect();
+        if (!(sqlDialect instanceof PreparedStatementSQLDialect)) {
+            throw new IllegalArgumentException(
+                    "Bulk loading requires prepared statements, the dialect is "
+                            + sqlDialect.getClass().getSimpleName());
+        }
+
+        this.source = source;
+        this.target = target;
+        this.dialect = (PreparedStatementSQLDialect) sqlDialect;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of rows sent to the database by one executeBatch()
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public int getCommitSize() {
+        return commitSize;
+    }
+
+    /**
+     * Sets the number of rows per transaction, the transaction is committed at the end of the
+     * batch which reaches the commit size.
+     */
+    public void setCommitSize(int commitSize) {
+        this.commitSize = Math.max(1, commitSize);
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Sets the number of features parsed ahead of the INSERT statements
+     */
+    public void setQueueSize(int queueSize) {
+        this.queueSize = Math.max(1, queueSize);
+    }
+
+    /**
+     * Loads the layer into the table of the same name and returns the number of inserted rows.
+     */
+    public int load(String typeName) throws IOException {
+        return load(typeName, typeName);
+    }
+
+    /**
+     * Loads the layer into the table and returns the number of inserted rows. The table is created
+     * when it does not exist, the columns of an existing table are matched by name. If loading
+     * fails, the rows of the already committed transactions are kept.
+     * <p>
+     * A primary key which is not loaded is filled by the database(auto increment), by its
+     * sequence or, for other keys, from the maximum key of the table read at the start of every
+     * transaction. The table must not be written concurrently in the last case, a duplicate key
+     * fails the load.
+     * </p>
+     */
+    public int load(String typeName, String tableName) throws IOException {
+        SimpleFeatureType sourceSchema = source.getSchema(typeName);
+        SimpleFeatureType targetSchema = getTargetSchema(sourceSchema, tableName);
+
+        // target columns and the source attributes bound to them
+        List<AttributeDescriptor> columns = new ArrayList<AttributeDescriptor>();
+        List<Integer> attributes = new ArrayList<Integer>();
+        for (AttributeDescriptor descriptor : targetSchema.getAttributeDescriptors()) {
+            int index = getAttributeIndex(sourceSchema, descriptor);
+            if (index == -1) {
+                LOGGER.log(Level.FINE, descriptor.getLocalName() + " column is not loaded");
+                continue;
+            }
+            columns.add(descriptor);
+            attributes.add(Integer.valueOf(index));
+        }
+
+        if (columns.isEmpty()) {
+            throw new IOException(tableName + " has no column matching " + typeName);
+        }
+
+        final long start = System.currentTimeMillis();
+        final int count;
+        Connection cx = null;
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = null;
+        try {
+            cx = target.getDataSource().getConnection();
+            PrimaryKeyColumn keyColumn = getKeyColumn(targetSchema, columns);
+
+            reader = source.getFeatureReader(new Query(typeName), Transaction.AUTO_COMMIT);
+            if (!(reader instanceof NGIReadAheadFeatureReader)) {
+                reader = new NGIReadAheadFeatureReader(reader, queueSize);
+            }
+
+            count = insert(cx, reader, targetSchema.getTypeName(), keyColumn, columns,
+                    attributes);
+        } catch (BulkLoadException e) {
+            throw loadFailed(typeName, tableName, e.committed, e.getCause());
+        } catch (SQLException e) {
+            throw loadFailed(typeName, tableName, 0, e);
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+            if (cx != null) {
+                target.closeSafe(cx);
+            }
+        }
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        LOGGER.log(Level.FINE, typeName + " -> " + tableName + ": " + count + " features, "
+                + elapsed + " ms, " + (count * 1000L / elapsed) + " features/s");
+        return count;
+    }
+
+    private IOException loadFailed(String typeName, String tableName, int committed,
+            SQLException e) {
+        IOException ioe = new IOException("Failed to load " + typeName + " into " + tableName
+                + ", " + committed + " features committed: " + e.getMessage());
+        ioe.initCause(e.getNextException() != null ? e.getNextException() : e);
+        return ioe;
+    }
+
+    /**
+     * Carries the number of committed rows out of a failed insert
+     */
+    static final class BulkLoadException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int committed;
+
+        BulkLoadException(SQLException cause, int committed) {
+            super(cause);
+            this.committed = committed;
+        }
+
+        @Override
+        public SQLException getCause() {
+            return (SQLException) super.getCause();
+        }
+    }
+
+    private int insert(Connection cx, FeatureReader<SimpleFeatureType, SimpleFeature> reader,
+            String tableName, PrimaryKeyColumn keyColumn, List<AttributeDescriptor> columns,
+            List<Integer> attributes) throws BulkLoadException, SQLException, IOException {
+        final int columnCount = columns.size();
+        // sequence values are encoded in the statement, other keys are bound
+        final boolean bindKey = keyColumn != null
+                && !(keyColumn instanceof SequencedPrimaryKeyColumn);
+        final int offset = bindKey ? 2 : 1;
+        final int[] sourceIndexes = new int[columnCount];
+        final int[] srids = new int[columnCount];
+        final boolean[] geometries = new boolean[columnCount];
+        final Class<?>[] bindings = new Class<?>[columnCount];
+        for (int index = 0; index < columnCount; index++) {
+            AttributeDescriptor descriptor = columns.get(index);
+            sourceIndexes[index] = attributes.get(index).intValue();
+            bindings[index] = descriptor.getType().getBinding();
+            if (descriptor instanceof GeometryDescriptor) {
+                geometries[index] = true;
+                srids[index] = getSRID((GeometryDescriptor) descriptor);
+            }
+        }
+
+        final boolean autoCommit = cx.getAutoCommit();
+        PreparedStatement ps = null;
+        int count = 0;
+        int committed = 0;
+        try {
+            cx.setAutoCommit(false);
+            ps = cx.prepareStatement(getInsertSQL(tableName, keyColumn, columns, srids));
+
+            long nextKey = 0;
+            int pending = 0;
+            int uncommitted = 0;
+            while (reader.hasNext()) {
+                SimpleFeature feature = reader.next();
+                if (bindKey) {
+                    if (pending == 0 && uncommitted == 0) {
+                        // rows committed by others since the last transaction are skipped
+                        nextKey = getMaxKey(cx, tableName, keyColumn.getName()) + 1;
+                    }
+                    ps.setLong(1, nextKey++);
+                }
+
+                for (int index = 0; index < columnCount; index++) {
+                    Object value = feature.getAttribute(sourceIndexes[index]);
+                    if (geometries[index]) {
+                        dialect.setGeometryValue((Geometry) value, srids[index], bindings[index],
+                                ps, offset + index);
+                    } else {
+                        dialect.setValue(value, bindings[index], ps, offset + index, cx);
+                    }
+                }
+                ps.addBatch();
+
+                if (++pending == batchSize) {
+                    ps.executeBatch();
+                    count += pending;
+                    uncommitted += pending;
+                    pending = 0;
+
+                    if (uncommitted >= commitSize) {
+                        cx.commit();
+                        committed = count;
+                        uncommitted = 0;
+                    }
+                }
+            }
+
+            if (pending > 0) {
+                ps.executeBatch();
+                count += pending;
+            }
+            cx.commit();
+        } catch (SQLException e) {
+            rollback(cx);
+            throw new BulkLoadException(e, committed);
+        } catch (IOException e) {
+            rollback(cx);
+            throw e;
+        } catch (RuntimeException e) {
+            rollback(cx);
+            throw e;
+        } finally {
+            if (ps != null) {
+                target.closeSafe(ps);
+            }
+            try {
+                cx.setAutoCommit(autoCommit);
+            } catch (SQLException e) {
+                LOGGER.log(Level.FINER, e.getMessage(), e);
+            }
+        }
+        return count;
+    }
+
+    private void rollback(Connection cx) {
+        try {
+            cx.rollback();
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINER, e.getMessage(), e);
+        }
+    }
+
+    private String getInsertSQL(String tableName, PrimaryKeyColumn keyColumn,
+            List<AttributeDescriptor> columns, int[] srids) {
+        StringBuffer sql = new StringBuffer("INSERT INTO ");
+        encodeTableName(tableName, sql);
+        sql.append(" (");
+        if (keyColumn != null) {
+            dialect.encodeColumnName(null, keyColumn.getName(), sql);
+            sql.append(", ");
+        }
+        for (int index = 0; index < columns.size(); index++) {
+            if (index > 0) {
+                sql.append(", ");
+            }
+            dialect.encodeColumnName(null, columns.get(index).getLocalName(), sql);
+        }
+
+        sql.append(") VALUES (");
+        if (keyColumn instanceof SequencedPrimaryKeyColumn) {
+            String sequenceName = ((SequencedPrimaryKeyColumn) keyColumn).getSequenceName();
+            dialect.encodeNextSequenceValue(target.getDatabaseSchema(), sequenceName, sql);
+            sql.append(", ");
+        } else if (keyColumn != null) {
+            sql.append("?, ");
+        }
+        for (int index = 0; index < columns.size(); index++) {
+            if (index > 0) {
+                sql.append(", ");
+            }
+            AttributeDescriptor descriptor = columns.get(index);
+            if (descriptor instanceof GeometryDescriptor) {
+                dialect.prepareGeometryValue(NOT_NULL, srids[index], descriptor.getType()
+                        .getBinding(), sql);
+            } else {
+                sql.append("?");
+            }
+        }
+        sql.append(")");
+
+        LOGGER.log(Level.FINE, sql.toString());
+        return sql.toString();
+    }
+
+    private void encodeTableName(String tableName, StringBuffer sql) {
+        String schemaName = target.getDatabaseSchema();
+        if (schemaName != null && schemaName.length() > 0) {
+            dialect.encodeSchemaName(schemaName, sql);
+            sql.append(".");
+        }
+        dialect.encodeTableName(tableName, sql);
+    }
+
+    private SimpleFeatureType getTargetSchema(SimpleFeatureType sourceSchema, String tableName)
+            throws IOException {
+        String existing = findTypeName(tableName);
+        if (existing == null) {
+            SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+            builder.init(sourceSchema);
+            builder.setName(tableName);
+            target.createSchema(builder.buildFeatureType());
+
+            existing = findTypeName(tableName);
+            if (existing == null) {
+                throw new IOException("Failed to create " + tableName);
+            }
+        }
+        return target.getSchema(existing);
+    }
+
+    private String findTypeName(String tableName) throws IOException {
+        // Tibero and Altibase store the table names in upper case
+        for (String typeName : target.getTypeNames()) {
+            if (typeName.equalsIgnoreCase(tableName)) {
+                return typeName;
+            }
+        }
+        return null;
+    }
+
+    private int getAttributeIndex(SimpleFeatureType sourceSchema, AttributeDescriptor descriptor) {
+        final String name = descriptor.getLocalName();
+        for (int index = 0; index < sourceSchema.getAttributeCount(); index++) {
+            if (sourceSchema.getDescriptor(index).getLocalName().equalsIgnoreCase(name)) {
+                return index;
+            }
+        }
+
+        // the geometry column of an existing table may have another name
+        GeometryDescriptor geometry = sourceSchema.getGeometryDescriptor();
+        if (descriptor instanceof GeometryDescriptor && geometry != null) {
+            return sourceSchema.indexOf(geometry.getLocalName());
+        }
+        return -1;
+    }
+
+    private int getSRID(GeometryDescriptor descriptor) {
+        Object srid = descriptor.getUserData().get(JDBCDataStore.JDBC_NATIVE_SRID);
+        if (srid instanceof Integer) {
+            return ((Integer) srid).intValue();
+        }
+
+        if (descriptor.getCoordinateReferenceSystem() != null) {
+            try {
+                Integer code = CRS.lookupEpsgCode(descriptor.getCoordinateReferenceSystem(), false);
+                if (code != null) {
+                    return code.intValue();
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, e.getMessage(), e);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the primary key column to fill, null when the key is generated by the database or
+     * is one of the loaded columns.
+     */
+    private PrimaryKeyColumn getKeyColumn(SimpleFeatureType targetSchema,
+            List<AttributeDescriptor> columns) throws IOException {
+        final String tableName = targetSchema.getTypeName();
+        List<PrimaryKeyColumn> keyColumns = target.getPrimaryKey(targetSchema).getColumns();
+        for (AttributeDescriptor descriptor : columns) {
+            for (PrimaryKeyColumn keyColumn : keyColumns) {
+                if (keyColumn.getName().equalsIgnoreCase(descriptor.getLocalName())) {
+                    return null;
+                }
+            }
+        }
+
+        if (keyColumns.isEmpty()) {
+            return null;
+        } else if (keyColumns.size() > 1) {
+            throw new IOException(tableName + " has a multi column primary key: " + keyColumns);
+        }
+
+        // auto increment columns are filled by the database
+        PrimaryKeyColumn keyColumn = keyColumns.get(0);
+        return keyColumn instanceof AutoGeneratedPrimaryKeyColumn ? null : keyColumn;
+    }
+
+    private long getMaxKey(Connection cx, String tableName, String keyColumn)
+            throws SQLException {
+        StringBuffer sql = new StringBuffer("SELECT MAX(");
+        dialect.encodeColumnName(null, keyColumn, sql);
+        sql.append(") FROM ");
+        encodeTableName(tableName, sql);
+
+        Statement st = cx.createStatement();
+        try {
+            ResultSet rs = st.executeQuery(sql.toString());
+            try {
+                return rs.next() ? rs.getLong(1) : 0;
+            } finally {
+                target.closeSafe(rs);
+            }
+        } finally {
+            target.closeSafe(st);
+        }
+    }
+}
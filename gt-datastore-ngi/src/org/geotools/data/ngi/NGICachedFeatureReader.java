@@ -0,0 +1,105 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.logging.Logger;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * FeatureReader over the cached features of a NGI layer. The cached features are copied (the
+ * geometries are shared) or retyped to the requested schema, so callers can not modify the cache.
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGICachedFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+    protected static final Logger LOGGER = Logging.getLogger(NGICachedFeatureReader.class);
+
+    private final SimpleFeatureType featureType;
+
+    private final boolean retype;
+
+    private final Envelope filterEnvelope;
+
+    private Iterator<SimpleFeature> iterator;
+
+    private SimpleFeature next;
+
+    public NGICachedFeatureReader(List<SimpleFeature> features, SimpleFeatureType schema,
+            SimpleFeatureType featureType, Envelope filterEnvelope) {
+        this.featureType = featureType;
+        this.retype = !schema.equals(featureType);
+        this.filterEnvelope = filterEnvelope;
+        this.iterator = features.iterator();
+    }
+
+    @Override
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        while (next == null && iterator != null && iterator.hasNext()) {
+            SimpleFeature feature = iterator.next();
+            if (filterEnvelope != null) {
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                if (geometry == null
+                        || !filterEnvelope.intersects(geometry.getEnvelopeInternal())) {
+                    continue;
+                }
+            }
+            next = feature;
+        }
+        return next != null;
+    }
+
+    @Override
+    public SimpleFeature next() throws IOException, IllegalArgumentException,
+            NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more features: " + featureType.getTypeName());
+        }
+
+        SimpleFeature feature = next;
+        next = null;
+        if (retype) {
+            return SimpleFeatureBuilder.retype(feature, featureType);
+        }
+        return SimpleFeatureBuilder.copy(feature);
+    }
+
+    @Override
+    public void close() throws IOException {
+        iterator = null;
+        next = null;
+    }
+}
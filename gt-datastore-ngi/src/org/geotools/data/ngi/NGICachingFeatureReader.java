@@ -0,0 +1,101 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.logging.Logger;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * FeatureReader which keeps a copy of the features of a full layer read and adds them to the
+ * {@link NGIFeatureCache} once the layer has been read to the end. Recording stops when the
+ * layer exceeds the memory budget of the cache.
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGICachingFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+    protected static final Logger LOGGER = Logging.getLogger(NGICachingFeatureReader.class);
+
+    private final FeatureReader<SimpleFeatureType, SimpleFeature> delegate;
+
+    private final NGIFeatureCache cache;
+
+    private final String typeName;
+
+    // modification stamp of the files before reading
+    private final long[] modified;
+
+    private List<SimpleFeature> features;
+
+    private long memory = 0;
+
+    public NGICachingFeatureReader(FeatureReader<SimpleFeatureType, SimpleFeature> delegate,
+            NGIFeatureCache cache, int count, long[] modified) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.typeName = delegate.getFeatureType().getTypeName();
+        this.modified = modified;
+        this.features = new ArrayList<SimpleFeature>(count);
+    }
+
+    @Override
+    public SimpleFeatureType getFeatureType() {
+        return delegate.getFeatureType();
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        final boolean hasNext = delegate.hasNext();
+        if (!hasNext && features != null) {
+            cache.put(typeName, features, memory, modified);
+            features = null;
+        }
+        return hasNext;
+    }
+
+    @Override
+    public SimpleFeature next() throws IOException, IllegalArgumentException,
+            NoSuchElementException {
+        SimpleFeature feature = delegate.next();
+        if (features != null) {
+            memory += NGIFeatureCache.estimateMemory(feature);
+            if (cache.isCacheable(memory)) {
+                features.add(SimpleFeatureBuilder.copy(feature));
+            } else {
+                features = null; // too large for the cache
+            }
+        }
+        return feature;
+    }
+
+    @Override
+    public void close() throws IOException {
+        features = null; // partially read
+        delegate.close();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import java.util.logging.Logger;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.factory.GeoTools;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.CoordinateSequenceFactory;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * FeatureReader over the columnar cache of a NGI layer. Returns the same features and feature
+ * ids as {@link NGIReader}, only the columns of the requested attributes are read.
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGIColumnarFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+    protected static final Logger LOGGER = Logging.getLogger(NGIColumnarFeatureReader.class);
+
+    private NGIColumnarLayer layer;
+
+    private final SimpleFeatureType featureType;
+
+    private final CoordinateReferenceSystem crs;
+
+    private final GeometryFactory gf;
+
+    private final SimpleFeatureBuilder fb;
+
+    private final boolean readGeometry;
+
+    private final Envelope filterEnvelope;
+
+    // attribute index in featureType and column index of the non geometry attributes
+    private final int[] attributes;
+
+    private final int[] columns;
+
+    // selected records, null reads all records
+    private final int[] selection;
+
+    private int index = 0;
+
+    private SimpleFeature next;
+
+    /**
+     * @param featureType sub type of the layer schema
+     * @param filterEnvelope records not intersecting it are skipped, null reads all records
+     * @param selection record positions in ascending order, null reads all records
+     */
+    public NGIColumnarFeatureReader(NGIColumnarLayer layer, SimpleFeatureType featureType,
+            CoordinateReferenceSystem crs, CoordinateSequenceFactory csFactory,
+            Envelope filterEnvelope, int[] selection) {
+        this.layer = layer;
+        this.featureType = featureType;
+        this.crs = crs;
+        this.filterEnvelope = filterEnvelope;
+        this.selection = selection;
+        this.readGeometry = featureType.getGeometryDescriptor() != null;
+        this.fb = new SimpleFeatureBuilder(featureType);
+
+        GeometryFactory defaultFactory = JTSFactoryFinder.getGeometryFactory(GeoTools
+                .getDefaultHints());
+        this.gf = new GeometryFactory(defaultFactory.getPrecisionModel(),
+                defaultFactory.getSRID(), csFactory);
+
+        int size = 0;
+        int[] attributeIndexes = new int[featureType.getAttributeCount()];
+        int[] columnIndexes = new int[featureType.getAttributeCount()];
+        for (int attIndex = 0; attIndex < featureType.getAttributeCount(); attIndex++) {
+            AttributeDescriptor desc = featureType.getDescriptor(attIndex);
+            final int column = desc instanceof GeometryDescriptor ? -1 : layer.getColumn(desc
+                    .getLocalName());
+            if (column != -1) {
+                attributeIndexes[size] = attIndex;
+                columnIndexes[size] = column;
+                size++;
+            }
+        }
+        this.attributes = new int[size];
+        this.columns = new int[size];
+        System.arraycopy(attributeIndexes, 0, attributes, 0, size);
+        System.arraycopy(columnIndexes, 0, columns, 0, size);
+    }
+
+    @Override
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        while (next == null && layer != null) {
+            final int record = nextRecord();
+            if (record == -1) {
+                break;
+            }
+
+            if (filterEnvelope != null && !layer.intersects(record, filterEnvelope)) {
+                continue;
+            }
+            next = buildFeature(record);
+        }
+        return next != null;
+    }
+
+    private int nextRecord() {
+        if (selection == null) {
+            return index < layer.getCount() ? index++ : -1;
+        }
+        return index < selection.length ? selection[index++] : -1;
+    }
+
+    private SimpleFeature buildFeature(int record) {
+        SimpleFeature feature = fb.buildFeature(featureType.getTypeName() + "." + (record + 1));
+        if (readGeometry) {
+            Geometry geometry = layer.getGeometry(record, gf);
+            if (geometry != null) {
+                geometry.setUserData(crs);
+                feature.setDefaultGeometry(geometry);
+            }
+        }
+
+        for (int attIndex = 0; attIndex < attributes.length; attIndex++) {
+            feature.setAttribute(attributes[attIndex], layer.getValue(columns[attIndex], record));
+        }
+        return feature;
+    }
+
+    @Override
+    public SimpleFeature next() throws IOException, IllegalArgumentException,
+            NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more features: " + featureType.getTypeName());
+        }
+
+        SimpleFeature feature = next;
+        next = null;
+        return feature;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the mapped file is shared by the readers of the layer
+        layer = null;
+        next = null;
+    }
+}
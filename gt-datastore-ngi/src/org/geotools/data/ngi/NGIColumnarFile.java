@@ -0,0 +1,662 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * NGI columnar cache file(*.&lt;hex encoded layer name&gt;.ngc)
+ * <p>
+ * Binary copy of the decoded records of a NGI layer, written on the first read of the layer and
+ * memory mapped by later reads({@link NGIColumnarLayer}) so the NGI/NDA text is not parsed
+ * again. The file is stamped with the size, the modification time and a checksum of both source
+ * files and is rebuilt when they do not match. The checksum covers the head and the tail of the
+ * files only, hashing them completely would cost as much as parsing them.
+ * </p>
+ *
+ * <pre>
+ * header      : magic, version, ngi length, ngi modified, nda length, nda modified, checksum,
+ *               catalog offset
+ * coordinates : x, y * point count
+ * envelopes   : minx, miny, maxx, maxy * count, NaN for empty geometries
+ * geometry    : shape offsets(count + 1), coordinate offsets(count + 1), shapes
+ * columns     : per attribute, null flags(1 bit per record) and values(int, long, double or
+ *               string offsets(count + 1) and UTF-16 characters)
+ * catalog     : charset, layer name, count, section offsets, per attribute(name, type, offsets)
+ * </pre>
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGIColumnarFile {
+    protected static final Logger LOGGER = Logging.getLogger(NGIColumnarFile.class);
+
+    static final String FILE_EXTENSION = ".ngc";
+
+    static final int MAGIC = 0x4E474331; // NGC1
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 4 + 4 + 8 * 6;
+
+    // bytes of the head and the tail of the source files covered by the checksum
+    static final int CHECKSUM_BLOCK_SIZE = 64 * 1024;
+
+    // shape types, followed by the point counts of the parts
+    static final int POINT = 1;
+
+    static final int LINESTRING = 2;
+
+    static final int POLYGON = 3;
+
+    static final int MULTIPOINT = 4;
+
+    static final int MULTILINESTRING = 5;
+
+    static final int MULTIPOLYGON = 6;
+
+    final File file;
+
+    final File ngiFile;
+
+    final File ndaFile;
+
+    final Charset charset;
+
+    public NGIColumnarFile(File ngiFile, File ndaFile, Charset charset, String layerName) {
+        this.file = getColumnarFile(ngiFile, layerName);
+        this.ngiFile = ngiFile;
+        this.ndaFile = ndaFile;
+        this.charset = charset;
+    }
+
+    /**
+     * Returns the cache file of the layer, named after the hex encoded UTF-8 bytes of the layer
+     * name: 35610069.eab1b4ebacbc.ngc
+     */
+    public static File getColumnarFile(File ngiFile, String layerName) {
+        return new File(getBaseName(ngiFile) + "." + encodeName(layerName) + FILE_EXTENSION);
+    }
+
+    /**
+     * Deletes the cache files of the NGI file that do not belong to any of the layers
+     */
+    public static void deleteOrphans(File ngiFile, Collection<String> layerNames) {
+        File directory = ngiFile.getAbsoluteFile().getParentFile();
+        File[] files = directory == null ? null : directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Set<String> names = new HashSet<String>();
+        for (String layerName : layerNames) {
+            names.add(encodeName(layerName));
+        }
+
+        final String prefix = new File(getBaseName(ngiFile)).getName() + ".";
+        for (File file : files) {
+            final String fileName = file.getName();
+            if (!fileName.startsWith(prefix) || !fileName.endsWith(FILE_EXTENSION)) {
+                continue;
+            }
+
+            String name = fileName.substring(prefix.length(), fileName.length()
+                    - FILE_EXTENSION.length());
+            if (isEncodedName(name) && !names.contains(name) && !file.delete()) {
+                // still mapped by a reader on Windows
+                LOGGER.log(Level.FINE, "Could not delete columnar cache file: " + file);
+            }
+        }
+    }
+
+    private static String getBaseName(File ngiFile) {
+        final String path = ngiFile.getPath();
+        final int pos = path.lastIndexOf('.');
+        return pos == -1 ? path : path.substring(0, pos);
+    }
+
+    private static String encodeName(String layerName) {
+        final char[] digits = "0123456789abcdef".toCharArray();
+        byte[] bytes = layerName.getBytes(Charset.forName("UTF-8"));
+        StringBuilder name = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            name.append(digits[(b >> 4) & 0xF]).append(digits[b & 0xF]);
+        }
+        return name.toString();
+    }
+
+    private static boolean isEncodedName(String name) {
+        if (name.length() == 0) {
+            return false;
+        }
+        for (int index = 0; index < name.length(); index++) {
+            if (Character.digit(name.charAt(index), 16) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the checksum of the head and the tail of the NGI and NDA files
+     */
+    public static long checksum(File ngiFile, File ndaFile) throws IOException {
+        CRC32 crc = new CRC32();
+        update(crc, ngiFile);
+        if (ndaFile.exists()) {
+            update(crc, ndaFile);
+        }
+        return crc.getValue();
+    }
+
+    private static void update(CRC32 crc, File source) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(source, "r");
+        try {
+            final long length = raf.length();
+            byte[] block = new byte[(int) Math.min(length, CHECKSUM_BLOCK_SIZE)];
+            raf.readFully(block);
+            crc.update(block);
+            if (length > CHECKSUM_BLOCK_SIZE) {
+                raf.seek(Math.max(CHECKSUM_BLOCK_SIZE, length - CHECKSUM_BLOCK_SIZE));
+                block = new byte[(int) (length - raf.getFilePointer())];
+                raf.readFully(block);
+                crc.update(block);
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Maps the cache file of the layer. The header and the catalog are validated with plain
+     * reads first, stale files are never mapped so they can be replaced.
+     *
+     * @return null if the file does not exist, is stale or does not match the layer schema
+     */
+    public NGIColumnarLayer read(NGILayerInfo layer, long checksum) {
+        final long length = file.length();
+        if (!file.exists() || length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+            return null;
+        }
+
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            if (raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+                return null;
+            }
+
+            final boolean hasNda = ndaFile.exists();
+            if (raf.readLong() != ngiFile.length() || raf.readLong() != ngiFile.lastModified()
+                    || raf.readLong() != (hasNda ? ndaFile.length() : -1)
+                    || raf.readLong() != (hasNda ? ndaFile.lastModified() : -1)
+                    || raf.readLong() != checksum) {
+                return null;
+            }
+
+            final long catalogOffset = raf.readLong();
+            if (catalogOffset < HEADER_SIZE || catalogOffset > length) {
+                return null;
+            }
+
+            byte[] catalog = new byte[(int) (length - catalogOffset)];
+            raf.seek(catalogOffset);
+            raf.readFully(catalog);
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(catalog));
+            if (!charset.name().equals(in.readUTF()) || !layer.getName().equals(in.readUTF())
+                    || in.readInt() != layer.getCount()) {
+                return null;
+            }
+
+            final int[] sections = new int[5];
+            for (int index = 0; index < sections.length; index++) {
+                sections[index] = in.readInt();
+            }
+
+            List<AttributeDescriptor> columns = getColumns(layer.getSchema());
+            if (in.readInt() != columns.size()) {
+                return null;
+            }
+
+            final int[] types = new int[columns.size()];
+            final int[] offsets = new int[columns.size() * 3];
+            for (int index = 0; index < columns.size(); index++) {
+                AttributeDescriptor desc = columns.get(index);
+                types[index] = NGIAttributeDecoder.getType(desc.getType().getBinding());
+                if (!desc.getLocalName().equals(in.readUTF()) || in.readInt() != types[index]) {
+                    return null;
+                }
+                offsets[index * 3] = in.readInt();
+                offsets[index * 3 + 1] = in.readInt();
+                offsets[index * 3 + 2] = in.readInt();
+            }
+
+            // the mapping stays valid after the file is closed
+            MappedByteBuffer buffer = raf.getChannel().map(MapMode.READ_ONLY, 0, length);
+            NGIColumnarLayer columnar = new NGIColumnarLayer(buffer, layer.getName(),
+                    layer.getCount());
+            columnar.envelopeOffset = sections[0];
+            columnar.shapeOffsetsOffset = sections[1];
+            columnar.coordinateOffsetsOffset = sections[2];
+            columnar.shapesOffset = sections[3];
+            columnar.coordinatesOffset = sections[4];
+            for (int index = 0; index < columns.size(); index++) {
+                AttributeDescriptor desc = columns.get(index);
+                columnar.addColumn(desc.getLocalName(), types[index], desc.getType()
+                        .getBinding(), offsets[index * 3], offsets[index * 3 + 1],
+                        offsets[index * 3 + 2]);
+            }
+            return columnar;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINER, e.getMessage(), e);
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINER, e.getMessage(), e);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes the features of the layer, read in record order with the layer schema.
+     *
+     * @return false if the layer does not fit in a cache file
+     */
+    public boolean write(NGILayerInfo layer, FeatureReader<SimpleFeatureType, SimpleFeature> reader,
+            long checksum) throws IOException {
+        final int count = layer.getCount();
+        final List<AttributeDescriptor> columns = getColumns(layer.getSchema());
+        final int columnCount = columns.size();
+
+        double[] envelopes = new double[count * 4];
+        int[] shapeOffsets = new int[count + 1];
+        int[] coordinateOffsets = new int[count + 1];
+        IntArray shapes = new IntArray(count * 2 + 16);
+
+        final int[] types = new int[columnCount];
+        final byte[][] nulls = new byte[columnCount][];
+        final Object[] values = new Object[columnCount];
+        final StringBuilder[] chars = new StringBuilder[columnCount];
+        for (int index = 0; index < columnCount; index++) {
+            types[index] = NGIAttributeDecoder.getType(columns.get(index).getType()
+                    .getBinding());
+            nulls[index] = new byte[(count + 7) / 8];
+            switch (types[index]) {
+            case NGIAttributeDecoder.INTEGER:
+                values[index] = new int[count];
+                break;
+            case NGIAttributeDecoder.LONG:
+                values[index] = new long[count];
+                break;
+            case NGIAttributeDecoder.DOUBLE:
+                values[index] = new double[count];
+                break;
+            default:
+                // strings and other values converted from their text
+                values[index] = new int[count + 1];
+                chars[index] = new StringBuilder();
+                break;
+            }
+        }
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tempFile);
+        boolean written = false;
+        try {
+            Output out = new Output(fos);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            final boolean hasNda = ndaFile.exists();
+            out.writeLong(ngiFile.length());
+            out.writeLong(ngiFile.lastModified());
+            out.writeLong(hasNda ? ndaFile.length() : -1);
+            out.writeLong(hasNda ? ndaFile.lastModified() : -1);
+            out.writeLong(checksum);
+            out.writeLong(0); // catalog offset
+
+            // coordinates are streamed, the other sections follow them
+            final int coordinatesOffset = HEADER_SIZE;
+            int record = 0;
+            int points = 0;
+            while (reader.hasNext()) {
+                if (record == count) {
+                    return false; // the layer changed while reading
+                }
+
+                SimpleFeature feature = reader.next();
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                if (geometry == null || geometry.isEmpty()) {
+                    Arrays.fill(envelopes, record * 4, record * 4 + 4, Double.NaN);
+                } else {
+                    Envelope envelope = geometry.getEnvelopeInternal();
+                    envelopes[record * 4] = envelope.getMinX();
+                    envelopes[record * 4 + 1] = envelope.getMinY();
+                    envelopes[record * 4 + 2] = envelope.getMaxX();
+                    envelopes[record * 4 + 3] = envelope.getMaxY();
+                }
+                if (geometry != null) {
+                    points += writeGeometry(geometry, shapes, out);
+                }
+                shapeOffsets[record + 1] = shapes.size;
+                coordinateOffsets[record + 1] = points;
+
+                for (int index = 0; index < columnCount; index++) {
+                    Object value = feature.getAttribute(columns.get(index).getLocalName());
+                    writeValue(value, record, types[index], nulls[index], values[index],
+                            chars[index]);
+                }
+
+                if (out.isTooLarge()) {
+                    return false; // larger than a mapped buffer
+                }
+                record++;
+            }
+
+            if (record != count) {
+                return false;
+            }
+
+            out.align();
+            final int envelopeOffset = out.size();
+            for (double value : envelopes) {
+                out.writeDouble(value);
+            }
+
+            final int shapeOffsetsOffset = out.size();
+            out.writeInts(shapeOffsets, shapeOffsets.length);
+            final int coordinateOffsetsOffset = out.size();
+            out.writeInts(coordinateOffsets, coordinateOffsets.length);
+            final int shapesOffset = out.size();
+            out.writeInts(shapes.values, shapes.size);
+
+            final int[][] offsets = new int[columnCount][3];
+            for (int index = 0; index < columnCount; index++) {
+                out.align();
+                offsets[index][0] = out.size();
+                out.write(nulls[index]);
+
+                out.align();
+                offsets[index][1] = out.size();
+                switch (types[index]) {
+                case NGIAttributeDecoder.INTEGER:
+                    out.writeInts((int[]) values[index], count);
+                    break;
+                case NGIAttributeDecoder.LONG:
+                    for (long value : (long[]) values[index]) {
+                        out.writeLong(value);
+                    }
+                    break;
+                case NGIAttributeDecoder.DOUBLE:
+                    for (double value : (double[]) values[index]) {
+                        out.writeDouble(value);
+                    }
+                    break;
+                default:
+                    out.writeInts((int[]) values[index], count + 1);
+                    offsets[index][2] = out.size();
+                    out.writeText(chars[index]);
+                    break;
+                }
+            }
+
+            final long catalogOffset = out.size();
+            out.writeUTF(charset.name());
+            out.writeUTF(layer.getName());
+            out.writeInt(count);
+            out.writeInt(envelopeOffset);
+            out.writeInt(shapeOffsetsOffset);
+            out.writeInt(coordinateOffsetsOffset);
+            out.writeInt(shapesOffset);
+            out.writeInt(coordinatesOffset);
+            out.writeInt(columnCount);
+            for (int index = 0; index < columnCount; index++) {
+                out.writeUTF(columns.get(index).getLocalName());
+                out.writeInt(types[index]);
+                out.writeInt(offsets[index][0]);
+                out.writeInt(offsets[index][1]);
+                out.writeInt(offsets[index][2]);
+            }
+            out.flush();
+
+            if (out.isTooLarge()) {
+                return false;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(8);
+            buffer.putLong(catalogOffset).flip();
+            fos.getChannel().write(buffer, HEADER_SIZE - 8);
+            written = true;
+        } finally {
+            fos.close();
+            if (!written) {
+                tempFile.delete();
+            }
+        }
+
+        if (file.exists() && !file.delete()) {
+            tempFile.delete();
+            throw new IOException("Could not replace columnar cache file: " + file);
+        }
+
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Could not create columnar cache file: " + file);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the non geometry attributes of the layer schema, the columns of the file
+     */
+    static List<AttributeDescriptor> getColumns(SimpleFeatureType schema) {
+        List<AttributeDescriptor> columns = new ArrayList<AttributeDescriptor>();
+        for (AttributeDescriptor desc : schema.getAttributeDescriptors()) {
+            if (!(desc instanceof GeometryDescriptor)) {
+                columns.add(desc);
+            }
+        }
+        return columns;
+    }
+
+    private static void writeValue(Object value, int record, int type, byte[] nulls,
+            Object values, StringBuilder chars) {
+        if (value == null) {
+            nulls[record >>> 3] |= 1 << (record & 7);
+        }
+
+        switch (type) {
+        case NGIAttributeDecoder.INTEGER:
+            ((int[]) values)[record] = value == null ? 0 : ((Number) value).intValue();
+            break;
+        case NGIAttributeDecoder.LONG:
+            ((long[]) values)[record] = value == null ? 0 : ((Number) value).longValue();
+            break;
+        case NGIAttributeDecoder.DOUBLE:
+            ((double[]) values)[record] = value == null ? 0 : ((Number) value).doubleValue();
+            break;
+        default:
+            if (value != null) {
+                chars.append(value.toString());
+            }
+            ((int[]) values)[record + 1] = chars.length();
+            break;
+        }
+    }
+
+    // writes the shape of the geometry and its coordinates, returns the number of points
+    private static int writeGeometry(Geometry geometry, IntArray shapes, Output out)
+            throws IOException {
+        if (geometry instanceof Point) {
+            shapes.add(POINT);
+            return writeSequence(((Point) geometry).getCoordinateSequence(), shapes, out);
+        } else if (geometry instanceof LineString) {
+            shapes.add(LINESTRING);
+            return writeSequence(((LineString) geometry).getCoordinateSequence(), shapes, out);
+        } else if (geometry instanceof Polygon) {
+            shapes.add(POLYGON);
+            return writePolygon((Polygon) geometry, shapes, out);
+        }
+
+        final int numGeometries = geometry.getNumGeometries();
+        int points = 0;
+        if (geometry instanceof MultiPoint) {
+            shapes.add(MULTIPOINT);
+            shapes.add(numGeometries);
+            for (int index = 0; index < numGeometries; index++) {
+                Point point = (Point) geometry.getGeometryN(index);
+                points += writeSequence(point.getCoordinateSequence(), shapes, out);
+            }
+        } else if (geometry instanceof MultiLineString) {
+            shapes.add(MULTILINESTRING);
+            shapes.add(numGeometries);
+            for (int index = 0; index < numGeometries; index++) {
+                LineString lineString = (LineString) geometry.getGeometryN(index);
+                points += writeSequence(lineString.getCoordinateSequence(), shapes, out);
+            }
+        } else if (geometry instanceof MultiPolygon) {
+            shapes.add(MULTIPOLYGON);
+            shapes.add(numGeometries);
+            for (int index = 0; index < numGeometries; index++) {
+                points += writePolygon((Polygon) geometry.getGeometryN(index), shapes, out);
+            }
+        } else {
+            throw new IOException("Unsupported geometry: " + geometry.getGeometryType());
+        }
+        return points;
+    }
+
+    private static int writePolygon(Polygon polygon, IntArray shapes, Output out)
+            throws IOException {
+        final int numHoles = polygon.getNumInteriorRing();
+        shapes.add(numHoles + 1);
+        int points = writeSequence(polygon.getExteriorRing().getCoordinateSequence(), shapes, out);
+        for (int index = 0; index < numHoles; index++) {
+            points += writeSequence(polygon.getInteriorRingN(index).getCoordinateSequence(),
+                    shapes, out);
+        }
+        return points;
+    }
+
+    private static int writeSequence(CoordinateSequence sequence, IntArray shapes, Output out)
+            throws IOException {
+        final int size = sequence.size();
+        shapes.add(size);
+        for (int index = 0; index < size; index++) {
+            out.writeDouble(sequence.getOrdinate(index, CoordinateSequence.X));
+            out.writeDouble(sequence.getOrdinate(index, CoordinateSequence.Y));
+        }
+        return size;
+    }
+
+    // growable int array
+    static final class IntArray {
+        int[] values;
+
+        int size = 0;
+
+        IntArray(int capacity) {
+            this.values = new int[Math.max(16, capacity)];
+        }
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    // data output of the sections, files are limited to the size of a mapped buffer
+    static final class Output extends DataOutputStream {
+
+        Output(FileOutputStream fos) {
+            super(new BufferedOutputStream(fos, 64 * 1024));
+        }
+
+        // size() stops counting at Integer.MAX_VALUE
+        boolean isTooLarge() {
+            return size() == Integer.MAX_VALUE;
+        }
+
+        void writeInts(int[] values, int size) throws IOException {
+            for (int index = 0; index < size; index++) {
+                writeInt(values[index]);
+            }
+        }
+
+        void writeText(CharSequence chars) throws IOException {
+            for (int index = 0; index < chars.length(); index++) {
+                writeChar(chars.charAt(index));
+            }
+        }
+
+        // pads to 8 bytes so the sections can be read as typed values
+        void align() throws IOException {
+            while (size() % 8 != 0) {
+                write(0);
+            }
+        }
+    }
+}
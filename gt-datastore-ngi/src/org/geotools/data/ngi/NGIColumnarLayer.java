@@ -0,0 +1,299 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.util.Converters;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.CoordinateSequenceFactory;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequenceFactory;
+
+/**
+ * Memory mapped columnar cache of a NGI layer({@link NGIColumnarFile}). Geometries and attribute
+ * values are built from the typed columns with absolute reads, so one instance is shared by the
+ * readers of the layer.
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGIColumnarLayer {
+
+    final ByteBuffer buffer;
+
+    final String name;
+
+    final int count;
+
+    // section offsets
+    int envelopeOffset;
+
+    int shapeOffsetsOffset;
+
+    int coordinateOffsetsOffset;
+
+    int shapesOffset;
+
+    int coordinatesOffset;
+
+    final List<Column> columns = new ArrayList<Column>();
+
+    // string values shared by the features, keyed on their UTF-16 bytes in the file
+    final NGIValueDictionary dictionary = new NGIValueDictionary();
+
+    NGIColumnarLayer(ByteBuffer buffer, String name, int count) {
+        this.buffer = buffer;
+        this.name = name;
+        this.count = count;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    void addColumn(String columnName, int type, Class<?> binding, int nullsOffset,
+            int valuesOffset, int charsOffset) {
+        columns.add(new Column(columnName, type, binding, nullsOffset, valuesOffset, charsOffset));
+    }
+
+    /**
+     * Returns the column index of the attribute, -1 if not found
+     */
+    public int getColumn(String columnName) {
+        for (int index = 0; index < columns.size(); index++) {
+            if (columns.get(index).name.equals(columnName)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true if the geometry envelope of the record intersects the envelope, false for
+     * empty geometries
+     */
+    public boolean intersects(int record, Envelope envelope) {
+        final int offset = envelopeOffset + record * 32;
+        final double minX = buffer.getDouble(offset);
+        if (Double.isNaN(minX)) {
+            return false;
+        }
+        return !(minX > envelope.getMaxX() || buffer.getDouble(offset + 16) < envelope.getMinX()
+                || buffer.getDouble(offset + 8) > envelope.getMaxY() || buffer
+                .getDouble(offset + 24) < envelope.getMinY());
+    }
+
+    /**
+     * Returns the value of the column for the record, null if not set
+     */
+    public Object getValue(int column, int record) {
+        final Column col = columns.get(column);
+        if ((buffer.get(col.nullsOffset + (record >>> 3)) & (1 << (record & 7))) != 0) {
+            return null;
+        }
+
+        switch (col.type) {
+        case NGIAttributeDecoder.INTEGER:
+            return Integer.valueOf(buffer.getInt(col.valuesOffset + record * 4));
+        case NGIAttributeDecoder.LONG:
+            return Long.valueOf(buffer.getLong(col.valuesOffset + record * 8));
+        case NGIAttributeDecoder.DOUBLE:
+            return Double.valueOf(buffer.getDouble(col.valuesOffset + record * 8));
+        case NGIAttributeDecoder.STRING:
+            return getString(col, record);
+        default:
+            return Converters.convert(getString(col, record), col.binding);
+        }
+    }
+
+    private String getString(Column col, int record) {
+        final int start = col.charsOffset + 2 * buffer.getInt(col.valuesOffset + record * 4);
+        final int end = col.charsOffset + 2 * buffer.getInt(col.valuesOffset + record * 4 + 4);
+        if (!col.interned) {
+            return decode(start, end);
+        }
+
+        Object value = dictionary.get(buffer, start, end, NGIAttributeDecoder.STRING);
+        if (value != null) {
+            col.hits++;
+        } else {
+            value = dictionary.put(buffer, start, end, NGIAttributeDecoder.STRING,
+                    decode(start, end));
+        }
+
+        // racy counters, only used to stop interning mostly distinct values
+        if (++col.lookups == NGIAttributeDecoder.SAMPLE_SIZE
+                && col.hits * 2 < NGIAttributeDecoder.SAMPLE_SIZE) {
+            col.interned = false;
+        }
+        return (String) value;
+    }
+
+    private String decode(int start, int end) {
+        char[] chars = new char[(end - start) / 2];
+        for (int index = 0; index < chars.length; index++) {
+            chars[index] = buffer.getChar(start + index * 2);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Builds the geometry of the record, null if the record has no geometry
+     */
+    public Geometry getGeometry(int record, GeometryFactory gf) {
+        int shape = buffer.getInt(shapeOffsetsOffset + record * 4);
+        if (shape == buffer.getInt(shapeOffsetsOffset + record * 4 + 4)) {
+            return null;
+        }
+
+        Cursor cursor = new Cursor(shapesOffset + shape * 4, coordinatesOffset + 16
+                * buffer.getInt(coordinateOffsetsOffset + record * 4));
+        switch (cursor.nextInt()) {
+        case NGIColumnarFile.POINT:
+            return gf.createPoint(readSequence(cursor, gf));
+        case NGIColumnarFile.LINESTRING:
+            return gf.createLineString(readSequence(cursor, gf));
+        case NGIColumnarFile.POLYGON:
+            return readPolygon(cursor, gf);
+        case NGIColumnarFile.MULTIPOINT:
+            Point[] points = new Point[cursor.nextInt()];
+            for (int index = 0; index < points.length; index++) {
+                points[index] = gf.createPoint(readSequence(cursor, gf));
+            }
+            return gf.createMultiPoint(points);
+        case NGIColumnarFile.MULTILINESTRING:
+            LineString[] lineStrings = new LineString[cursor.nextInt()];
+            for (int index = 0; index < lineStrings.length; index++) {
+                lineStrings[index] = gf.createLineString(readSequence(cursor, gf));
+            }
+            return gf.createMultiLineString(lineStrings);
+        case NGIColumnarFile.MULTIPOLYGON:
+            Polygon[] polygons = new Polygon[cursor.nextInt()];
+            for (int index = 0; index < polygons.length; index++) {
+                polygons[index] = readPolygon(cursor, gf);
+            }
+            return gf.createMultiPolygon(polygons);
+        default:
+            return null;
+        }
+    }
+
+    private Polygon readPolygon(Cursor cursor, GeometryFactory gf) {
+        final int numRings = cursor.nextInt();
+        LinearRing shell = gf.createLinearRing(readSequence(cursor, gf));
+        LinearRing[] holes = new LinearRing[numRings - 1];
+        for (int index = 0; index < holes.length; index++) {
+            holes[index] = gf.createLinearRing(readSequence(cursor, gf));
+        }
+        return gf.createPolygon(shell, holes);
+    }
+
+    private CoordinateSequence readSequence(Cursor cursor, GeometryFactory gf) {
+        final int size = cursor.nextInt();
+        final CoordinateSequenceFactory csFactory = gf.getCoordinateSequenceFactory();
+        if (isPackedDouble(csFactory)) {
+            double[] packed = new double[size * 2];
+            for (int index = 0; index < packed.length; index++) {
+                packed[index] = cursor.nextDouble();
+            }
+            return ((PackedCoordinateSequenceFactory) csFactory).create(packed, 2);
+        }
+
+        CoordinateSequence sequence = csFactory.create(size, 2);
+        for (int index = 0; index < size; index++) {
+            sequence.setOrdinate(index, CoordinateSequence.X, cursor.nextDouble());
+            sequence.setOrdinate(index, CoordinateSequence.Y, cursor.nextDouble());
+        }
+        return sequence;
+    }
+
+    private static boolean isPackedDouble(CoordinateSequenceFactory csFactory) {
+        return csFactory instanceof PackedCoordinateSequenceFactory
+                && ((PackedCoordinateSequenceFactory) csFactory).getType()
+                == PackedCoordinateSequenceFactory.DOUBLE;
+    }
+
+    // read positions in the shapes and the coordinates of a record
+    final class Cursor {
+        int shape;
+
+        int coordinate;
+
+        Cursor(int shape, int coordinate) {
+            this.shape = shape;
+            this.coordinate = coordinate;
+        }
+
+        int nextInt() {
+            final int value = buffer.getInt(shape);
+            shape += 4;
+            return value;
+        }
+
+        double nextDouble() {
+            final double value = buffer.getDouble(coordinate);
+            coordinate += 8;
+            return value;
+        }
+    }
+
+    static final class Column {
+        final String name;
+
+        final int type;
+
+        final Class<?> binding;
+
+        final int nullsOffset;
+
+        final int valuesOffset;
+
+        final int charsOffset;
+
+        boolean interned = true;
+
+        int lookups = 0;
+
+        int hits = 0;
+
+        Column(String name, int type, Class<?> binding, int nullsOffset, int valuesOffset,
+                int charsOffset) {
+            this.name = name;
+            this.type = type;
+            this.binding = binding;
+            this.nullsOffset = nullsOffset;
+            this.valuesOffset = valuesOffset;
+            this.charsOffset = charsOffset;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.geotools.util.logging.Logging;
+
+/**
+ * NGI/NDA file stored in a ZIP archive or compressed with GZIP, read by streaming decompression
+ * without extracting it.
+ * <p>
+ * The path of a ZIP entry is the entry under the archive(sheets.zip/35610069.NGI), the path of a
+ * GZIP file is the uncompressed file name(35610069.ngi.gz -> 35610069.ngi). Length and
+ * modification time are those of the archive, they identify the content for the index file and
+ * the feature cache.
+ * </p>
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGICompressedFile extends File {
+    private static final long serialVersionUID = 1L;
+
+    protected static final Logger LOGGER = Logging.getLogger(NGICompressedFile.class);
+
+    static final String ZIP_TYPE = "zip";
+
+    static final String GZIP_TYPE = "gz";
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File archive;
+
+    // null for GZIP files
+    private final String entryName;
+
+    private NGICompressedFile(File archive, String entryName, String path) {
+        super(path);
+        this.archive = archive;
+        this.entryName = entryName;
+    }
+
+    /**
+     * Returns the entry of the ZIP archive
+     */
+    public static NGICompressedFile zipEntry(File archive, String entryName) {
+        return new NGICompressedFile(archive, entryName, new File(archive, entryName).getPath());
+    }
+
+    /**
+     * Returns the GZIP file(*.ngi.gz, *.nda.gz)
+     */
+    public static NGICompressedFile gzipFile(File archive) {
+        final String path = archive.getPath();
+        return new NGICompressedFile(archive, null, path.substring(0, path.length() - 3));
+    }
+
+    public static boolean isCompressed(String path) {
+        final String lowerPath = path.toLowerCase();
+        return lowerPath.endsWith("." + ZIP_TYPE) || lowerPath.endsWith("." + GZIP_TYPE);
+    }
+
+    /**
+     * Returns the NGI entries(*.ngi) of the ZIP archive, in archive order
+     */
+    public static List<NGICompressedFile> listZipEntries(File archive) throws IOException {
+        List<NGICompressedFile> result = new ArrayList<NGICompressedFile>();
+        ZipFile zipFile = new ZipFile(archive);
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                final String name = entry.getName().toLowerCase();
+                if (!entry.isDirectory() && name.endsWith("." + NGIDataStoreFactory.FILE_TYPE)) {
+                    result.add(zipEntry(archive, entry.getName()));
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+        return result;
+    }
+
+    public File getArchive() {
+        return archive;
+    }
+
+    public String getEntryName() {
+        return entryName;
+    }
+
+    public boolean isZipEntry() {
+        return entryName != null;
+    }
+
+    /**
+     * Returns the file of the same sheet with the given extension(".nda"), in the same archive
+     * for ZIP entries.
+     */
+    public NGICompressedFile getSibling(String extension) {
+        if (isZipEntry()) {
+            final int index = entryName.lastIndexOf('.');
+            return zipEntry(archive, entryName.substring(0, index) + extension);
+        }
+
+        final String path = archive.getPath();
+        final int index = path.lastIndexOf('.', path.length() - 4);
+        final String suffix = path.substring(path.length() - 3); // .gz
+        return gzipFile(new File(path.substring(0, index) + extension + suffix));
+    }
+
+    /**
+     * Opens the decompressed content, the caller must close the stream
+     */
+    public InputStream openStream() throws IOException {
+        if (!isZipEntry()) {
+            return new GZIPInputStream(new FileInputStream(archive), BUFFER_SIZE);
+        }
+
+        final ZipFile zipFile = new ZipFile(archive);
+        ZipEntry entry = zipFile.getEntry(entryName);
+        if (entry == null) {
+            zipFile.close();
+            throw new IOException(entryName + " does not exist in " + archive);
+        }
+
+        return new FilterInputStream(zipFile.getInputStream(entry)) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    zipFile.close();
+                }
+            }
+        };
+    }
+
+    @Override
+    public boolean exists() {
+        if (!archive.isFile()) {
+            return false;
+        } else if (!isZipEntry()) {
+            return true;
+        }
+
+        try {
+            ZipFile zipFile = new ZipFile(archive);
+            try {
+                return zipFile.getEntry(entryName) != null;
+            } finally {
+                zipFile.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINER, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean isFile() {
+        return exists();
+    }
+
+    @Override
+    public boolean canWrite() {
+        return false;
+    }
+
+    @Override
+    public long length() {
+        return archive.length();
+    }
+
+    @Override
+    public long lastModified() {
+        return archive.lastModified();
+    }
+}
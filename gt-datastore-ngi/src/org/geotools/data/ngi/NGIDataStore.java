@@ -19,20 +19,46 @@ package org.geotools.data.ngi;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.geotools.data.AbstractDataStore;
+import org.geotools.data.DataSourceException;
+import org.geotools.data.DataUtilities;
 import org.geotools.data.FeatureReader;
+import org.geotools.data.FeatureWriter;
 import org.geotools.data.Query;
+import org.geotools.data.Transaction;
 import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.feature.SchemaException;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.filter.visitor.ExtractBoundsFilterVisitor;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.util.logging.Logging;
+import org.opengis.feature.FeatureVisitor;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.Filter;
+import org.opengis.filter.Id;
+import org.opengis.filter.spatial.BBOX;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
+import com.vividsolutions.jts.geom.CoordinateSequenceFactory;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequenceFactory;
+
 /**
  * NGI DataStore
  * 
@@ -44,7 +70,9 @@ import org.opengis.referencing.crs.CoordinateReferenceSystem;
 public class NGIDataStore extends AbstractDataStore {
     protected static final Logger LOGGER = Logging.getLogger(NGIDataStore.class);
 
-    private final NGISchemaReader schemaReader;
+    static final int MAX_STATISTICS = 64;
+
+    private volatile NGISchemaReader schemaReader;
 
     private File ngiFile;
 
@@ -52,26 +80,250 @@ public class NGIDataStore extends AbstractDataStore {
 
     private final Charset charset;
 
+    private final CoordinateReferenceSystem crs;
+
+    private CoordinateSequenceFactory csFactory = PackedCoordinateSequenceFactory.DOUBLE_FACTORY;
+
+    private boolean useSpatialIndex = false;
+
+    private long spatialIndexMaxMemory = 64L * 1024 * 1024;
+
+    // spatial indexes built on the first spatial query, least recently used first
+    private final Map<String, NGISpatialIndex> spatialIndexes = new LinkedHashMap<String, NGISpatialIndex>(
+            16, 0.75f, true);
+
+    private long spatialIndexMemory = 0;
+
+    private int threads;
+
+    private boolean parallelRead = false;
+
+    private int readAheadSize = 0;
+
+    // decoded features of the recently read layers, null if disabled
+    private volatile NGIFeatureCache featureCache;
+
+    private boolean useColumnarCache = false;
+
+    // checksum of the NGI/NDA files stamped in the columnar cache files, -1 if not computed
+    private volatile long checksum = -1;
+
+    // count and extent per filter, least recently used first
+    private final Map<List<Object>, NGIFilterStatistics> statistics =
+            new LinkedHashMap<List<Object>, NGIFilterStatistics>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, NGIFilterStatistics> eldest) {
+            return size() > MAX_STATISTICS;
+        }
+    };
+
     public NGIDataStore(File ngiFile, Charset charset, CoordinateReferenceSystem crs)
             throws IOException {
-        super(false);
+        this(ngiFile, charset, crs, NGIExecutors.getDefaultThreads());
+    }
+
+    public NGIDataStore(File ngiFile, Charset charset, CoordinateReferenceSystem crs, int threads)
+            throws IOException {
+        super(true);
+        this.threads = threads;
         this.ngiFile = ngiFile;
         this.charset = charset;
+        this.crs = crs;
 
         // Linux
-        final int endIndex = ngiFile.getPath().length() - 4;
-        this.ndaFile = new File(ngiFile.getPath().substring(0, endIndex) + ".nda");
-        if (!ndaFile.exists()) {
-            this.ndaFile = new File(ngiFile.getPath().substring(0, endIndex) + ".NDA");
+        if (ngiFile.exists()) {
+            this.ndaFile = getSibling(ngiFile, ".nda");
+            if (!ndaFile.exists()) {
+                this.ndaFile = getSibling(ngiFile, ".NDA");
+            }
+
+            if (!ndaFile.exists()) {
+                LOGGER.log(Level.WARNING, "NDA file does not exist!");
+            }
+        } else {
+            // new file, created by createSchema
+            final boolean upperCase = ngiFile.getPath().endsWith(".NGI");
+            this.ndaFile = getSibling(ngiFile, upperCase ? ".NDA" : ".nda");
+        }
+
+        this.schemaReader = new NGISchemaReader(ngiFile, ndaFile, charset, crs);
+    }
+
+    private static File getSibling(File ngiFile, String extension) {
+        if (ngiFile instanceof NGICompressedFile) {
+            return ((NGICompressedFile) ngiFile).getSibling(extension);
+        }
+
+        final String path = ngiFile.getPath();
+        return new File(path.substring(0, path.length() - 4) + extension);
+    }
+
+    /**
+     * Returns true if the NGI file is read from a ZIP archive or a GZIP file.
+     */
+    public boolean isCompressed() {
+        return ngiFile instanceof NGICompressedFile;
+    }
+
+    /**
+     * Rescans the NGI file after a layer has been written.
+     */
+    void reload() throws IOException {
+        synchronized (spatialIndexes) {
+            spatialIndexes.clear();
+            spatialIndexMemory = 0;
         }
 
-        if (!ndaFile.exists()) {
-            LOGGER.log(Level.WARNING, "NDA file does not exist!");
+        if (featureCache != null) {
+            featureCache.clear();
         }
 
+        synchronized (statistics) {
+            statistics.clear();
+        }
+        this.checksum = -1;
         this.schemaReader = new NGISchemaReader(ngiFile, ndaFile, charset, crs);
     }
 
+    public CoordinateSequenceFactory getCoordinateSequenceFactory() {
+        return csFactory;
+    }
+
+    /**
+     * Sets the CoordinateSequenceFactory of the geometries returned by the feature readers.
+     */
+    public void setCoordinateSequenceFactory(CoordinateSequenceFactory csFactory) {
+        this.csFactory = csFactory;
+    }
+
+    public boolean isUseSpatialIndex() {
+        return useSpatialIndex;
+    }
+
+    /**
+     * Enables the in-memory spatial index, which is built per layer on the first spatial query.
+     * Disabled by default, it pays off for repeated spatial queries(read-only previews).
+     */
+    public void setUseSpatialIndex(boolean useSpatialIndex) {
+        this.useSpatialIndex = useSpatialIndex;
+        if (!useSpatialIndex) {
+            synchronized (spatialIndexes) {
+                spatialIndexes.clear();
+                spatialIndexMemory = 0;
+            }
+        }
+    }
+
+    public long getSpatialIndexMaxMemory() {
+        return spatialIndexMaxMemory;
+    }
+
+    /**
+     * Sets the approximate heap size in bytes the spatial indexes may use. Least recently used
+     * indexes are released when the limit is exceeded.
+     */
+    public void setSpatialIndexMaxMemory(long spatialIndexMaxMemory) {
+        this.spatialIndexMaxMemory = spatialIndexMaxMemory;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the maximum number of layers read concurrently by {@link #visit}.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public boolean isParallelRead() {
+        return parallelRead;
+    }
+
+    /**
+     * Enables parsing the records of large layers in chunks on {@link #getThreads()} threads. The
+     * features are returned in record order.
+     */
+    public void setParallelRead(boolean parallelRead) {
+        this.parallelRead = parallelRead;
+    }
+
+    public int getReadAheadSize() {
+        return readAheadSize;
+    }
+
+    /**
+     * Sets the number of features parsed ahead on a background thread, 0 parses the features on
+     * the thread calling next().
+     */
+    public void setReadAheadSize(int readAheadSize) {
+        this.readAheadSize = readAheadSize;
+    }
+
+    public long getFeatureCacheMaxMemory() {
+        NGIFeatureCache cache = featureCache;
+        return cache == null ? 0 : cache.getMaxMemory();
+    }
+
+    /**
+     * Sets the approximate heap size in bytes of the decoded features cached by layer, 0 disables
+     * the cache. Layers are cached when read completely, least recently used layers beyond the
+     * limit are kept in soft references.
+     */
+    public void setFeatureCacheMaxMemory(long featureCacheMaxMemory) {
+        this.featureCache = featureCacheMaxMemory <= 0 ? null : new NGIFeatureCache(ngiFile,
+                ndaFile, featureCacheMaxMemory);
+    }
+
+    public boolean isUseColumnarCache() {
+        return useColumnarCache;
+    }
+
+    /**
+     * Enables the columnar cache: each layer is converted on its first read to a binary file
+     * next to the NGI file({@link NGIColumnarFile}), later reads are served from the memory
+     * mapped file. Compressed and read-only files are always read from the text records.
+     */
+    public void setUseColumnarCache(boolean useColumnarCache) {
+        this.useColumnarCache = useColumnarCache;
+    }
+
+    /**
+     * Reads all features of the given layers, all layers if none is given. The layers are read
+     * concurrently, each with its own reader, and the visitor is called from the worker threads
+     * so it must be thread safe.
+     */
+    public void visit(final FeatureVisitor visitor, String... typeNames) throws IOException {
+        if (typeNames == null || typeNames.length == 0) {
+            typeNames = getTypeNames();
+        }
+
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(typeNames.length);
+        for (final String typeName : typeNames) {
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    int count = 0;
+                    FeatureReader<SimpleFeatureType, SimpleFeature> reader;
+                    reader = getFeatureReader(typeName);
+                    try {
+                        while (reader.hasNext()) {
+                            visitor.visit(reader.next());
+                            count++;
+                        }
+                    } finally {
+                        reader.close();
+                    }
+                    return Integer.valueOf(count);
+                }
+            });
+        }
+        NGIExecutors.invokeAll(tasks, threads);
+    }
+
     @Override
     public String[] getTypeNames() throws IOException {
         return schemaReader.getSchemas().keySet()
@@ -85,23 +337,482 @@ public class NGIDataStore extends AbstractDataStore {
 
     @Override
     protected ReferencedEnvelope getBounds(Query query) throws IOException {
-        return schemaReader.getBounds().get(query.getTypeName());
+        if (NGIFeatureReader.isPaged(query)) {
+            return null; // calculated from the features of the page
+        }
+
+        final String typeName = query.getTypeName();
+        if (NGIFeatureReader.isInclude(query.getFilter())) {
+            return schemaReader.getBounds().get(typeName);
+        }
+        return getStatistics(typeName, query.getFilter(), typeName + ".").getBounds();
     }
 
     @Override
     protected int getCount(Query query) throws IOException {
-        return schemaReader.getCounts().get(query.getTypeName());
+        final String typeName = query.getTypeName();
+        int count;
+        if (NGIFeatureReader.isInclude(query.getFilter())) {
+            Integer layerCount = schemaReader.getCounts().get(typeName);
+            if (layerCount == null) {
+                throw new IOException(typeName + " does not exist!");
+            }
+            count = layerCount.intValue();
+        } else {
+            count = getStatistics(typeName, query.getFilter(), typeName + ".").getCount();
+        }
+        return NGIFeatureReader.getPageCount(count, query);
+    }
+
+    /**
+     * Returns the number and extent of the records matching the filter. The record envelopes of
+     * the record index decide BBOX filters and the extent, other filters are evaluated against
+     * features holding only the attributes used by the filter.
+     */
+    NGIFilterStatistics getStatistics(String typeName, Filter filter, String idPrefix)
+            throws IOException {
+        final List<Object> key = Arrays.asList(typeName, idPrefix, filter);
+        synchronized (statistics) {
+            NGIFilterStatistics result = statistics.get(key);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        NGIFilterStatistics result = computeStatistics(typeName, filter, idPrefix);
+        synchronized (statistics) {
+            statistics.put(key, result);
+        }
+        return result;
+    }
+
+    private NGIFilterStatistics computeStatistics(String typeName, Filter filter,
+            String idPrefix) throws IOException {
+        NGILayerInfo layer = schemaReader.getLayer(typeName);
+        if (layer == null) {
+            throw new IOException(typeName + " does not exist!");
+        }
+
+        final SimpleFeatureType schema = layer.getSchema();
+        final CoordinateReferenceSystem layerCrs = schema.getCoordinateReferenceSystem();
+        NGIFilterStatistics result = new NGIFilterStatistics(layerCrs);
+        if (filter == Filter.EXCLUDE || layer.getCount() == 0) {
+            return result;
+        }
+
+        final NGIRecordIndex records = schemaReader.getRecordIndex(typeName);
+        final Envelope envelope = NGIFeatureReader.getFilterEnvelope(filter, schema);
+
+        // candidate records
+        int[] selection = null;
+        Set<String> featureIds = NGIFeatureReader.getFeatureIds(filter);
+        if (featureIds != null) {
+            selection = NGIFeatureReader.getRecordSelection(featureIds, idPrefix,
+                    layer.getCount());
+            if (filter instanceof Id) {
+                for (int record : selection) {
+                    result.add(records, record);
+                }
+                return result;
+            }
+        } else if (envelope != null) {
+            // scanning the record envelopes is cheaper than building a spatial index
+            selection = new int[records.size()];
+            int size = 0;
+            for (int record = 0; record < records.size(); record++) {
+                if (records.intersects(record, envelope)) {
+                    selection[size++] = record;
+                }
+            }
+            selection = Arrays.copyOf(selection, size);
+        }
+
+        // the records within the box match a BBOX filter, only the records crossing the
+        // border need the geometry. a reprojected box is larger than the filter.
+        boolean boxFilter = filter instanceof BBOX && envelope != null;
+        if (boxFilter) {
+            Object bbox = filter.accept(ExtractBoundsFilterVisitor.BOUNDS_VISITOR, null);
+            boxFilter = envelope.equals(bbox);
+        }
+
+        if (boxFilter) {
+            int size = 0;
+            for (int record : selection) {
+                if (records.isEmpty(record)) {
+                    continue;
+                } else if (envelope.contains(records.getMinX(record), records.getMinY(record))
+                        && envelope.contains(records.getMaxX(record), records.getMaxY(record))) {
+                    result.add(records, record);
+                } else {
+                    selection[size++] = record;
+                }
+            }
+            selection = Arrays.copyOf(selection, size);
+        }
+
+        if (selection != null && selection.length == 0) {
+            return result;
+        }
+
+        // the attributes used by the filter
+        Set<String> names = new HashSet<String>(Arrays.asList(DataUtilities.attributeNames(
+                filter, schema)));
+        GeometryDescriptor geometry = schema.getGeometryDescriptor();
+        if (geometry != null && (envelope != null || names.contains(""))) {
+            names.add(geometry.getLocalName());
+        }
+
+        Query query = new Query(typeName, filter);
+        query.setPropertyNames(names.toArray(new String[names.size()]));
+        SimpleFeatureType featureType = getReadSchema(schema, query);
+
+        FeatureReader<SimpleFeatureType, SimpleFeature> featureReader = getFeatureReader(layer,
+                featureType, filter, envelope, selection);
+
+        // the readers return typeName.(record + 1), Id filters of a directory store hold
+        // typeName.sheet.(record + 1) and are evaluated against features with those ids
+        final int prefixLength = typeName.length() + 1;
+        final boolean renamed = !idPrefix.equals(typeName + ".");
+        try {
+            while (featureReader.hasNext()) {
+                SimpleFeature feature = featureReader.next();
+                if (renamed) {
+                    String featureId = idPrefix + feature.getID().substring(prefixLength);
+                    feature = SimpleFeatureBuilder.build(featureType, feature.getAttributes(),
+                            featureId);
+                }
+
+                if (filter.evaluate(feature)) {
+                    int record = Integer.parseInt(feature.getID().substring(idPrefix.length())) - 1;
+                    result.add(records, record);
+                }
+            }
+        } finally {
+            featureReader.close();
+        }
+        return result;
+    }
+
+    /**
+     * Applies the start index of filtered queries after the filter, the pages of unfiltered
+     * queries are read from the record offsets.
+     */
+    @Override
+    public FeatureReader<SimpleFeatureType, SimpleFeature> getFeatureReader(Query query,
+            Transaction transaction) throws IOException {
+        final int startIndex = NGIFeatureReader.getStartIndex(query);
+        if (startIndex == 0 || NGIFeatureReader.isInclude(query.getFilter())) {
+            return super.getFeatureReader(query, transaction);
+        }
+
+        Query unpaged = NGIFeatureReader.getUnpagedQuery(query);
+        return NGIFeatureReader.skipFeatures(super.getFeatureReader(unpaged, transaction),
+                startIndex);
     }
 
     @Override
     protected FeatureReader<SimpleFeatureType, SimpleFeature> getFeatureReader(String typeName)
             throws IOException {
-        return new NGIFeatureReader(new NGIReader(ngiFile, ndaFile, charset), getSchema(typeName));
+        return getFeatureReader(typeName, Filter.INCLUDE, null, typeName + ".");
+    }
+
+    @Override
+    protected FeatureReader<SimpleFeatureType, SimpleFeature> getFeatureReader(String typeName,
+            Query query) throws IOException {
+        // the bounding box and the feature ids of the filter and the page of unfiltered queries
+        // are applied while reading, the filter itself is still evaluated by AbstractDataStore
+        return getFeatureReader(typeName, query.getFilter(), query, typeName + ".");
+    }
+
+    /**
+     * Returns the features of the layer, the feature ids of the filter are the record numbers
+     * after idPrefix.
+     */
+    FeatureReader<SimpleFeatureType, SimpleFeature> getFeatureReader(String typeName,
+            Filter filter, Query query, String idPrefix) throws IOException {
+        NGILayerInfo layer = schemaReader.getLayer(typeName);
+        if (layer == null) {
+            throw new IOException(typeName + " does not exist!");
+        }
+
+        SimpleFeatureType featureType = layer.getSchema();
+        if (query != null && !query.retrieveAllProperties()) {
+            featureType = getReadSchema(featureType, query);
+        }
+
+        Envelope envelope = NGIFeatureReader.getFilterEnvelope(filter, layer.getSchema());
+
+        int[] recordSelection = null;
+        Set<String> featureIds = NGIFeatureReader.getFeatureIds(filter);
+        if (featureIds != null) {
+            recordSelection = NGIFeatureReader.getRecordSelection(featureIds, idPrefix,
+                    layer.getCount());
+        } else if (query != null && NGIFeatureReader.isInclude(filter)) {
+            // the records of the page(start index, max features)
+            recordSelection = NGIFeatureReader.getRecordSelection(query, layer.getCount());
+        }
+
+        final NGIFeatureCache cache = featureCache;
+        if (cache == null) {
+            return getFeatureReader(layer, featureType, filter, envelope, recordSelection);
+        }
+
+        List<SimpleFeature> features = cache.get(typeName);
+        if (features != null) {
+            if (recordSelection != null) {
+                List<SimpleFeature> selected = new ArrayList<SimpleFeature>(
+                        recordSelection.length);
+                for (int record : recordSelection) {
+                    selected.add(features.get(record));
+                }
+                features = selected;
+            }
+            return new NGICachedFeatureReader(features, layer.getSchema(), featureType, envelope);
+        }
+
+        // full layer reads fill the cache
+        final long[] modified = cache.getModified();
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = getFeatureReader(layer,
+                featureType, filter, envelope, recordSelection);
+        if (envelope == null && recordSelection == null && featureType == layer.getSchema()) {
+            return new NGICachingFeatureReader(reader, cache, layer.getCount(), modified);
+        }
+        return reader;
+    }
+
+    private FeatureReader<SimpleFeatureType, SimpleFeature> getFeatureReader(NGILayerInfo layer,
+            SimpleFeatureType featureType, Filter filter, Envelope envelope,
+            int[] recordSelection) throws IOException {
+        final String typeName = layer.getName();
+        NGIRecordIndex records = null;
+        int[] selection = null;
+        if (recordSelection != null) {
+            // seek to the requested records, the record envelopes are checked while reading
+            records = schemaReader.getRecordIndex(typeName);
+            selection = recordSelection;
+        } else if (envelope != null && useSpatialIndex) {
+            NGISpatialIndex spatialIndex = getSpatialIndex(layer);
+            if (spatialIndex != null) {
+                // seek to the candidate records instead of scanning the layer
+                records = spatialIndex.getRecords();
+                selection = spatialIndex.query(envelope);
+            }
+        }
+
+        NGIColumnarLayer columnar = getColumnarLayer(layer);
+        if (columnar != null) {
+            return new NGIColumnarFeatureReader(columnar, featureType, layer.getSchema()
+                    .getCoordinateReferenceSystem(), csFactory, envelope, selection);
+        }
+
+        final int recordCount = selection == null ? layer.getCount() : selection.length;
+        // every chunk of a compressed file would be decompressed from the start
+        if (parallelRead && threads > 1 && recordCount > NGIParallelFeatureReader.CHUNK_SIZE
+                && !isCompressed()) {
+            if (records == null) {
+                records = schemaReader.getRecordIndex(typeName);
+            }
+            return new NGIParallelFeatureReader(this, layer, featureType, envelope, records,
+                    selection, threads);
+        }
+
+        NGIReader reader = createReader();
+        NGIFeatureReader featureReader = new NGIFeatureReader(reader, layer, featureType, filter);
+        if (selection != null) {
+            reader.setRecords(records, selection);
+        }
+
+        if (readAheadSize > 0) {
+            return new NGIReadAheadFeatureReader(featureReader, readAheadSize);
+        }
+        return featureReader;
+    }
+
+    /**
+     * Returns the columnar cache of the layer, loading or writing it on the first call. null if
+     * the cache is disabled or could not be written.
+     */
+    private NGIColumnarLayer getColumnarLayer(NGILayerInfo layer) throws IOException {
+        if (!useColumnarCache || isCompressed() || layer.getCount() == 0) {
+            return null;
+        }
+
+        synchronized (layer) {
+            if (layer.columnar == null && !layer.columnarFailed) {
+                layer.columnar = loadColumnarLayer(layer);
+                layer.columnarFailed = layer.columnar == null;
+            }
+            return layer.columnar;
+        }
+    }
+
+    private NGIColumnarLayer loadColumnarLayer(NGILayerInfo layer) throws IOException {
+        NGIColumnarFile columnarFile = new NGIColumnarFile(ngiFile, ndaFile, charset,
+                layer.getName());
+        try {
+            if (checksum == -1) {
+                checksum = NGIColumnarFile.checksum(ngiFile, ndaFile);
+                // once per load of the NGI file: cache files of layers that no longer exist
+                NGIColumnarFile.deleteOrphans(ngiFile, schemaReader.getLayers().keySet());
+            }
+
+            NGIColumnarLayer columnar = columnarFile.read(layer, checksum);
+            if (columnar != null) {
+                return columnar;
+            }
+
+            // first read: the text records are converted with the default double precision
+            // coordinate sequences, whatever the sequences returned to the caller
+            NGIFeatureReader reader = new NGIFeatureReader(new NGIReader(ngiFile, ndaFile,
+                    charset), layer);
+            boolean written;
+            try {
+                written = columnarFile.write(layer, reader, checksum);
+            } finally {
+                reader.close();
+            }
+            return written ? columnarFile.read(layer, checksum) : null;
+        } catch (IOException e) {
+            // read-only directory: keep reading the text records
+            LOGGER.log(Level.FINE, e.getMessage(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Creates a new empty layer, the features are added through the feature writer of the layer.
+     */
+    @Override
+    public void createSchema(SimpleFeatureType featureType) throws IOException {
+        if (isCompressed()) {
+            throw new IOException("Compressed NGI files are read only: " + ngiFile);
+        }
+
+        final String typeName = featureType.getTypeName();
+        if (schemaReader.getLayer(typeName) != null) {
+            throw new IOException(typeName + " already exists!");
+        }
+
+        NGIWriter writer = new NGIWriter(ngiFile, ndaFile, charset, featureType);
+        try {
+            writer.close();
+        } finally {
+            reload();
+        }
+    }
+
+    /**
+     * Returns a writer streaming the features to the layer, which is written to the NGI file on
+     * close. NGI records can not be updated in place, so only empty layers are writable.
+     */
+    @Override
+    protected FeatureWriter<SimpleFeatureType, SimpleFeature> createFeatureWriter(
+            String typeName, Transaction transaction) throws IOException {
+        if (isCompressed()) {
+            throw new IOException("Compressed NGI files are read only: " + ngiFile);
+        }
+
+        NGILayerInfo layer = schemaReader.getLayer(typeName);
+        if (layer == null) {
+            throw new IOException(typeName + " does not exist!");
+        }
+
+        if (layer.getCount() > 0) {
+            throw new IOException(typeName + " already holds records, NGI layers are write once");
+        }
+
+        NGIWriter writer = new NGIWriter(ngiFile, ndaFile, charset, layer.getSchema());
+        return new NGIFeatureWriter(this, writer);
+    }
+
+    /**
+     * Returns the layer catalog of the NGI file.
+     */
+    Map<String, NGILayerInfo> getLayers() {
+        return schemaReader.getLayers();
+    }
+
+    NGIReader createReader() throws IOException {
+        NGIReader reader = new NGIReader(ngiFile, ndaFile, charset);
+        reader.setCoordinateSequenceFactory(csFactory);
+        return reader;
+    }
+
+    /**
+     * Returns the sub type holding the query properties and the attributes used by the filter,
+     * in the order of the layer schema. AbstractDataStore retypes it to the query properties.
+     */
+    static SimpleFeatureType getReadSchema(SimpleFeatureType schema, Query query)
+            throws IOException {
+        Set<String> names = new HashSet<String>(Arrays.asList(query.getPropertyNames()));
+        Filter filter = query.getFilter();
+        if (filter != null && filter != Filter.INCLUDE) {
+            names.addAll(Arrays.asList(DataUtilities.attributeNames(filter, schema)));
+        }
+
+        List<String> properties = new ArrayList<String>();
+        for (AttributeDescriptor desc : schema.getAttributeDescriptors()) {
+            if (names.contains(desc.getLocalName())) {
+                properties.add(desc.getLocalName());
+            }
+        }
+
+        try {
+            return DataUtilities.createSubType(schema,
+                    properties.toArray(new String[properties.size()]));
+        } catch (SchemaException e) {
+            throw new DataSourceException(e.getMessage(), e);
+        }
+    }
+
+    private NGISpatialIndex getSpatialIndex(NGILayerInfo layer) throws IOException {
+        final String typeName = layer.getName();
+        if (NGISpatialIndex.estimateMemory(layer.getCount()) > spatialIndexMaxMemory) {
+            return null;
+        }
+
+        synchronized (spatialIndexes) {
+            NGISpatialIndex spatialIndex = spatialIndexes.get(typeName);
+            if (spatialIndex != null) {
+                return spatialIndex;
+            }
+        }
+
+        NGIRecordIndex records = schemaReader.getRecordIndex(typeName);
+        if (records == null) {
+            return null;
+        }
+        NGISpatialIndex spatialIndex = new NGISpatialIndex(records);
+
+        synchronized (spatialIndexes) {
+            NGISpatialIndex current = spatialIndexes.get(typeName);
+            if (current != null) {
+                return current; // built concurrently
+            }
+
+            spatialIndexes.put(typeName, spatialIndex);
+            spatialIndexMemory += spatialIndex.getMemory();
+
+            Iterator<NGISpatialIndex> iter = spatialIndexes.values().iterator();
+            while (spatialIndexMemory > spatialIndexMaxMemory && iter.hasNext()) {
+                NGISpatialIndex eldest = iter.next();
+                if (eldest != spatialIndex) {
+                    spatialIndexMemory -= eldest.getMemory();
+                    iter.remove();
+                }
+            }
+        }
+        return spatialIndex;
     }
 
     @Override
     public SimpleFeatureSource getFeatureSource(final String typeName) {
         try {
+            NGILayerInfo layer = schemaReader.getLayer(typeName);
+            if (layer != null && layer.getCount() == 0 && !isCompressed()) {
+                // empty layers are writable
+                return super.getFeatureSource(typeName);
+            }
             return new NGIFeatureSource(this, Collections.EMPTY_SET, getSchema(typeName));
         } catch (IOException e) {
             LOGGER.log(Level.FINER, e.getMessage(), e);
@@ -17,16 +17,20 @@
 package org.geotools.data.ngi;
 
 import java.awt.RenderingHints.Key;
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.net.URL;
+import java.net.URLDecoder;
 import java.nio.charset.Charset;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.geotools.data.AbstractDataStoreFactory;
+import org.geotools.data.DataSourceException;
 import org.geotools.data.DataStore;
 import org.geotools.data.DataStoreFactorySpi;
 import org.geotools.data.DataUtilities;
@@ -51,8 +55,9 @@ public class NGIDataStoreFactory extends AbstractDataStoreFactory implements Dat
     // 공간데이터(*.NGI, *.NBI), 속성데이터(*.NDA, *.NDB) 표현
     static final String FILE_TYPE = "ngi";
 
-    public static final Param PARAM_FILE = new Param("url", URL.class, "url to a .ngi/.nda file",
-            true, null, new KVP(Param.EXT, FILE_TYPE));
+    public static final Param PARAM_FILE = new Param("url", URL.class,
+            "url to a .ngi/.nda file, a .zip archive or a .ngi.gz file", true, null, new KVP(
+                    Param.EXT, FILE_TYPE));
 
     public static final Param PARAM_SRS = new Param("srs", String.class, "force srs", false, "",
             new KVP(Param.LEVEL, "advanced"));
@@ -61,6 +66,30 @@ public class NGIDataStoreFactory extends AbstractDataStoreFactory implements Dat
             "character used to decode strings from the NGI file", false, "x-windows-949", new KVP(
                     Param.LEVEL, "advanced"));
 
+    public static final Param PARAM_SPATIAL_INDEX = new Param("create spatial index",
+            Boolean.class, "build an in-memory spatial index on the first spatial query", false,
+            Boolean.FALSE, new KVP(Param.LEVEL, "advanced"));
+
+    public static final Param PARAM_SPATIAL_INDEX_MEMORY = new Param("spatial index memory",
+            Integer.class, "maximum memory (MB) used by the in-memory spatial indexes", false,
+            Integer.valueOf(64), new KVP(Param.LEVEL, "advanced"));
+
+    public static final Param PARAM_PARALLEL_READ = new Param("parallel read", Boolean.class,
+            "parse the records of large layers on several threads", false, Boolean.FALSE,
+            new KVP(Param.LEVEL, "advanced"));
+
+    public static final Param PARAM_READ_AHEAD = new Param("read ahead", Integer.class,
+            "number of features parsed ahead on a background thread, 0 to disable", false,
+            Integer.valueOf(0), new KVP(Param.LEVEL, "advanced"));
+
+    public static final Param PARAM_FEATURE_CACHE_MEMORY = new Param("feature cache memory",
+            Integer.class, "maximum memory (MB) used to cache the features of read layers, "
+                    + "0 to disable", false, Integer.valueOf(0), new KVP(Param.LEVEL, "advanced"));
+
+    public static final Param PARAM_COLUMNAR_CACHE = new Param("columnar cache", Boolean.class,
+            "convert each layer on its first read to a memory mapped binary file", false,
+            Boolean.FALSE, new KVP(Param.LEVEL, "advanced"));
+
     public String getDisplayName() {
         return "NGI File";
     }
@@ -70,7 +99,9 @@ public class NGIDataStoreFactory extends AbstractDataStoreFactory implements Dat
     }
 
     public Param[] getParametersInfo() {
-        return new Param[] { PARAM_FILE, PARAM_SRS, PARAM_CHARSET };
+        return new Param[] { PARAM_FILE, PARAM_SRS, PARAM_CHARSET, PARAM_SPATIAL_INDEX,
+                PARAM_SPATIAL_INDEX_MEMORY, PARAM_PARALLEL_READ, PARAM_READ_AHEAD,
+                PARAM_FEATURE_CACHE_MEMORY, PARAM_COLUMNAR_CACHE };
     }
 
     public boolean isAvailable() {
@@ -88,7 +119,14 @@ public class NGIDataStoreFactory extends AbstractDataStoreFactory implements Dat
         if (params.containsKey(PARAM_FILE.key)) {
             try {
                 URL url = (URL) PARAM_FILE.lookUp(params);
-                result = url.getFile().toLowerCase().endsWith(".ngi");
+                final String path = url.getFile().toLowerCase();
+                result = path.endsWith("." + FILE_TYPE)
+                        || path.endsWith("." + FILE_TYPE + "." + NGICompressedFile.GZIP_TYPE);
+                if (!result && path.endsWith("." + NGICompressedFile.ZIP_TYPE)) {
+                    File archive = DataUtilities.urlToFile(url);
+                    result = archive != null && archive.isFile()
+                            && !NGICompressedFile.listZipEntries(archive).isEmpty();
+                }
             } catch (IOException ioe) {
                 /* return false on any exception */
             }
@@ -118,11 +156,87 @@ public class NGIDataStoreFactory extends AbstractDataStoreFactory implements Dat
             }
         }
 
-        return new NGIDataStore(DataUtilities.urlToFile(url), Charset.forName(charset), crs);
+        NGIDataStore dataStore = new NGIDataStore(getNGIFile(url),
+                Charset.forName(charset), crs);
+
+        Boolean spatialIndex = (Boolean) PARAM_SPATIAL_INDEX.lookUp(params);
+        if (spatialIndex != null) {
+            dataStore.setUseSpatialIndex(spatialIndex.booleanValue());
+        }
+
+        Integer memory = (Integer) PARAM_SPATIAL_INDEX_MEMORY.lookUp(params);
+        if (memory != null) {
+            dataStore.setSpatialIndexMaxMemory(memory.longValue() * 1024 * 1024);
+        }
+
+        Boolean parallelRead = (Boolean) PARAM_PARALLEL_READ.lookUp(params);
+        if (parallelRead != null) {
+            dataStore.setParallelRead(parallelRead.booleanValue());
+        }
+
+        Integer readAhead = (Integer) PARAM_READ_AHEAD.lookUp(params);
+        if (readAhead != null) {
+            dataStore.setReadAheadSize(readAhead.intValue());
+        }
+
+        Integer cacheMemory = (Integer) PARAM_FEATURE_CACHE_MEMORY.lookUp(params);
+        if (cacheMemory != null) {
+            dataStore.setFeatureCacheMaxMemory(cacheMemory.longValue() * 1024 * 1024);
+        }
+
+        Boolean columnarCache = (Boolean) PARAM_COLUMNAR_CACHE.lookUp(params);
+        if (columnarCache != null) {
+            dataStore.setUseColumnarCache(columnarCache.booleanValue());
+        }
+        return dataStore;
+    }
+
+    /**
+     * Returns the NGI file of the url: a file, an entry of a ZIP archive(jar:file:/sheets.zip!/
+     * 35610069.NGI, or the first NGI entry of file:/sheets.zip) or a GZIP file(*.ngi.gz).
+     */
+    static File getNGIFile(URL url) throws IOException {
+        if ("jar".equals(url.getProtocol())) {
+            final String path = url.getPath();
+            final int index = path.indexOf("!/");
+            if (index == -1) {
+                throw new DataSourceException("Invalid ZIP entry url: " + url);
+            }
+
+            File archive = DataUtilities.urlToFile(new URL(path.substring(0, index)));
+            String entryName = URLDecoder.decode(path.substring(index + 2), "UTF-8");
+            return NGICompressedFile.zipEntry(archive, entryName);
+        }
+
+        File file = DataUtilities.urlToFile(url);
+        final String path = file.getPath().toLowerCase();
+        if (path.endsWith("." + NGICompressedFile.ZIP_TYPE)) {
+            List<NGICompressedFile> entries = NGICompressedFile.listZipEntries(file);
+            if (entries.isEmpty()) {
+                throw new DataSourceException("ZIP archive does not contain a NGI file: " + file);
+            } else if (entries.size() > 1) {
+                LOGGER.log(Level.INFO, file + " contains " + entries.size()
+                        + " NGI files, reading " + entries.get(0).getEntryName());
+            }
+            return entries.get(0);
+        } else if (path.endsWith("." + NGICompressedFile.GZIP_TYPE)) {
+            return NGICompressedFile.gzipFile(file);
+        }
+        return file;
     }
 
     public DataStore createNewDataStore(Map<String, Serializable> params) throws IOException {
-        return null;
+        URL url = (URL) PARAM_FILE.lookUp(params);
+        if ("jar".equals(url.getProtocol()) || NGICompressedFile.isCompressed(url.getPath())) {
+            throw new DataSourceException("Compressed NGI files can not be created: " + url);
+        }
+
+        File file = DataUtilities.urlToFile(url);
+        if (file.exists()) {
+            throw new DataSourceException(file + " already exists!");
+        }
+
+        return createDataStore(params);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,539 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.AbstractDataStore;
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * NGI DataStore over a directory of map sheets(*.ngi, *.ngi.gz or the NGI files of *.zip). Each
+ * layer name is exposed as one feature type merged across the sheets, queries only open the sheets
+ * whose layer BOUND() intersects the bounding box of the filter.
+ * <p>
+ * With the map index option the extents of the sheets are calculated from the map index numbers
+ * of the file names(see {@link NGIMapIndex}), so the sheets are only opened when they are read.
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGIDirectoryDataStore extends AbstractDataStore {
+    protected static final Logger LOGGER = Logging.getLogger(NGIDirectoryDataStore.class);
+
+    // map sheet datastores kept open, they only hold the layer catalog of the sheet
+    static final int MAX_OPEN_SHEETS = 32;
+
+    // map index extents are expanded by a quarter of the sheet size on each side
+    static final double MAP_INDEX_MARGIN = 0.25;
+
+    private final File directory;
+
+    private final Charset charset;
+
+    private final CoordinateReferenceSystem crs;
+
+    private final int threads;
+
+    // guards the catalog
+    private final List<NGISheet> sheets = new ArrayList<NGISheet>();
+
+    private boolean catalogLoaded = false;
+
+    private int loadedSheets = 0;
+
+    private final Map<String, SimpleFeatureType> schemas = new TreeMap<String, SimpleFeatureType>();
+
+    private final Map<String, ReferencedEnvelope> bounds = new TreeMap<String, ReferencedEnvelope>();
+
+    private final Map<String, Integer> counts = new TreeMap<String, Integer>();
+
+    // least recently used first
+    private final Map<NGISheet, NGIDataStore> dataStores = new LinkedHashMap<NGISheet, NGIDataStore>(
+            16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<NGISheet, NGIDataStore> eldest) {
+            return size() > MAX_OPEN_SHEETS;
+        }
+    };
+
+    // count and extent per filter, least recently used first
+    private final Map<List<Object>, NGIFilterStatistics> statistics =
+            new LinkedHashMap<List<Object>, NGIFilterStatistics>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, NGIFilterStatistics> eldest) {
+            return size() > NGIDataStore.MAX_STATISTICS;
+        }
+    };
+
+    public NGIDirectoryDataStore(File directory, Charset charset, CoordinateReferenceSystem crs)
+            throws IOException {
+        this(directory, charset, crs, NGIExecutors.getDefaultThreads());
+    }
+
+    public NGIDirectoryDataStore(File directory, Charset charset, CoordinateReferenceSystem crs,
+            int threads) throws IOException {
+        this(directory, charset, crs, threads, false);
+    }
+
+    /**
+     * @param useMapIndex plan the queries with the sheet extents calculated from the map index
+     *        numbers of the file names, the sheets are only opened when read
+     */
+    public NGIDirectoryDataStore(File directory, Charset charset, CoordinateReferenceSystem crs,
+            int threads, boolean useMapIndex) throws IOException {
+        super(false);
+        this.directory = directory;
+        this.charset = charset;
+        this.crs = crs;
+        this.threads = threads;
+
+        if (useMapIndex && crs == null) {
+            LOGGER.log(Level.WARNING, "Map index extents require the srs of the map sheets!");
+            useMapIndex = false;
+        }
+
+        List<NGISheet> unknown = new ArrayList<NGISheet>();
+        for (File file : listSheetFiles()) {
+            NGISheet sheet = new NGISheet(file);
+            if (useMapIndex) {
+                sheet.indexBounds = NGIMapIndex.getExtent(sheet.getName(), crs, MAP_INDEX_MARGIN);
+            }
+
+            sheets.add(sheet);
+            if (sheet.indexBounds == null) {
+                unknown.add(sheet);
+            }
+        }
+
+        // sheets without map index number are cataloged up front
+        loadSheets(unknown);
+        this.catalogLoaded = unknown.size() == sheets.size();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the map sheets of the directory, ordered by file name.
+     */
+    public List<NGISheet> getSheets() {
+        return Collections.unmodifiableList(sheets);
+    }
+
+    /**
+     * Returns the map sheets holding records of the layer which may intersect the envelope, all
+     * sheets holding the layer if envelope is null. Sheets not opened yet are selected by their
+     * map index extent, without any I/O.
+     */
+    public List<NGISheet> getSheets(String typeName, Envelope envelope) {
+        List<NGISheet> result = new ArrayList<NGISheet>();
+        synchronized (sheets) {
+            for (NGISheet sheet : sheets) {
+                if (sheet.intersects(typeName, envelope)) {
+                    result.add(sheet);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Lists the NGI files of the directory ordered by file name, including the NGI entries of
+     * ZIP archives and GZIP files(*.ngi.gz).
+     */
+    private List<File> listSheetFiles() throws IOException {
+        final String ngiType = "." + NGIDataStoreFactory.FILE_TYPE;
+        final String gzipType = ngiType + "." + NGICompressedFile.GZIP_TYPE;
+        final String zipType = "." + NGICompressedFile.ZIP_TYPE;
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                final String name = file.getName().toLowerCase();
+                return file.isFile()
+                        && (name.endsWith(ngiType) || name.endsWith(gzipType) || name
+                                .endsWith(zipType));
+            }
+        });
+
+        if (files == null) {
+            throw new IOException(directory + " is not a directory!");
+        }
+        Arrays.sort(files);
+
+        List<File> result = new ArrayList<File>(files.length);
+        for (File file : files) {
+            final String name = file.getName().toLowerCase();
+            if (name.endsWith(zipType)) {
+                result.addAll(NGICompressedFile.listZipEntries(file));
+            } else if (name.endsWith(gzipType)) {
+                result.add(NGICompressedFile.gzipFile(file));
+            } else {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+
+    private void loadSheets(List<NGISheet> pending) throws IOException {
+        List<Callable<NGIDataStore>> tasks = new ArrayList<Callable<NGIDataStore>>(pending.size());
+        for (final NGISheet sheet : pending) {
+            tasks.add(new Callable<NGIDataStore>() {
+                @Override
+                public NGIDataStore call() throws Exception {
+                    // sheets are cataloged in parallel, the layers of a sheet on one thread
+                    return new NGIDataStore(sheet.getFile(), charset, crs, 1);
+                }
+            });
+        }
+
+        List<NGIDataStore> sheetStores = NGIExecutors.invokeAll(tasks, threads);
+        for (int index = 0; index < pending.size(); index++) {
+            addSheet(pending.get(index), sheetStores.get(index));
+        }
+    }
+
+    private void addSheet(NGISheet sheet, NGIDataStore sheetStore) {
+        synchronized (sheets) {
+            if (sheet.loaded) {
+                return;
+            }
+            sheet.loaded = true;
+            catalogLoaded = ++loadedSheets == sheets.size();
+
+            for (NGILayerInfo layer : sheetStore.getLayers().values()) {
+                final String typeName = layer.getName();
+                if (layer.getSchema() == null) {
+                    continue;
+                }
+                sheet.add(layer);
+
+                if (!schemas.containsKey(typeName)) {
+                    // the first sheet holding the layer defines the merged schema
+                    schemas.put(typeName, layer.getSchema());
+                    bounds.put(typeName, new ReferencedEnvelope(crs));
+                    counts.put(typeName, Integer.valueOf(0));
+                }
+
+                ReferencedEnvelope extent = layer.getBounds();
+                if (extent != null && !extent.isNull()) {
+                    bounds.get(typeName).expandToInclude(extent);
+                }
+                counts.put(typeName,
+                        Integer.valueOf(counts.get(typeName) + layer.getCount()));
+            }
+        }
+    }
+
+    NGIDataStore getDataStore(NGISheet sheet) throws IOException {
+        NGIDataStore dataStore;
+        synchronized (dataStores) {
+            dataStore = dataStores.get(sheet);
+        }
+
+        if (dataStore == null) {
+            // the sheet is scanned outside the lock, other sheets are opened meanwhile
+            // sheets are small and pruned by extent, they keep the default sequential read
+            NGIDataStore created = new NGIDataStore(sheet.getFile(), charset, crs);
+            synchronized (dataStores) {
+                dataStore = dataStores.get(sheet);
+                if (dataStore == null) {
+                    dataStores.put(sheet, created);
+                    dataStore = created;
+                    created = null;
+                }
+            }
+
+            if (created != null) {
+                created.dispose(); // opened by another thread
+            }
+        }
+
+        addSheet(sheet, dataStore);
+        return dataStore;
+    }
+
+    /**
+     * Returns the layers of the sheets opened so far when the sheets are selected by map index,
+     * the first sheet is opened if none is. The sheets of a map series share their layers, the
+     * layers of the other sheets are added as they are opened.
+     */
+    @Override
+    public String[] getTypeNames() throws IOException {
+        synchronized (sheets) {
+            if (catalogLoaded || !schemas.isEmpty()) {
+                return schemas.keySet().toArray(new String[schemas.size()]);
+            }
+        }
+
+        for (NGISheet sheet : getSheets()) {
+            getDataStore(sheet);
+            synchronized (sheets) {
+                if (!schemas.isEmpty()) {
+                    break;
+                }
+            }
+        }
+
+        synchronized (sheets) {
+            return schemas.keySet().toArray(new String[schemas.size()]);
+        }
+    }
+
+    /**
+     * Unfiltered statistics need every sheet of the layer, with map index they are not known
+     * before all sheets are opened.
+     */
+    private boolean isCatalogLoaded() {
+        synchronized (sheets) {
+            return catalogLoaded;
+        }
+    }
+
+    @Override
+    public SimpleFeatureType getSchema(String typeName) throws IOException {
+        synchronized (sheets) {
+            if (schemas.containsKey(typeName) || catalogLoaded) {
+                return schemas.get(typeName);
+            }
+        }
+
+        // opens the sheets until one holds the layer
+        for (NGISheet sheet : getSheets()) {
+            if (!sheet.loaded) {
+                getDataStore(sheet);
+                synchronized (sheets) {
+                    if (schemas.containsKey(typeName)) {
+                        return schemas.get(typeName);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected ReferencedEnvelope getBounds(Query query) throws IOException {
+        if (NGIFeatureReader.isPaged(query)) {
+            return null; // calculated from the features of the page
+        }
+
+        if (NGIFeatureReader.isInclude(query.getFilter())) {
+            if (!isCatalogLoaded()) {
+                return null; // calculated from the features
+            }
+            synchronized (sheets) {
+                return bounds.get(query.getTypeName());
+            }
+        }
+        return getStatistics(query.getTypeName(), query.getFilter()).getBounds();
+    }
+
+    @Override
+    protected int getCount(Query query) throws IOException {
+        int count;
+        if (NGIFeatureReader.isInclude(query.getFilter())) {
+            if (!isCatalogLoaded()) {
+                return -1; // counted from the features
+            }
+            synchronized (sheets) {
+                Integer layerCount = counts.get(query.getTypeName());
+                count = layerCount == null ? 0 : layerCount.intValue();
+            }
+        } else {
+            count = getStatistics(query.getTypeName(), query.getFilter()).getCount();
+        }
+        return NGIFeatureReader.getPageCount(count, query);
+    }
+
+    /**
+     * Returns the number and extent of the features matching the filter, summed over the sheets
+     * selected by the filter.
+     */
+    private NGIFilterStatistics getStatistics(String typeName, Filter filter)
+            throws IOException {
+        final List<Object> key = Arrays.asList(typeName, filter);
+        synchronized (statistics) {
+            NGIFilterStatistics result = statistics.get(key);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        SimpleFeatureType featureType = getSchema(typeName);
+        if (featureType == null) {
+            throw new IOException(typeName + " does not exist!");
+        }
+
+        Envelope envelope = NGIFeatureReader.getFilterEnvelope(filter, featureType);
+        List<NGISheet> candidates = getSheets(typeName, envelope);
+        Set<String> featureIds = NGIFeatureReader.getFeatureIds(filter);
+        if (featureIds != null) {
+            candidates = getSheets(candidates, typeName, featureIds);
+        }
+
+        NGIFilterStatistics result = new NGIFilterStatistics(
+                featureType.getCoordinateReferenceSystem());
+        for (NGISheet sheet : candidates) {
+            NGIDataStore sheetStore = getDataStore(sheet);
+            if (sheet.hasLayer(typeName)) {
+                String idPrefix = typeName + "." + sheet.getName() + ".";
+                result.add(sheetStore.getStatistics(typeName, filter, idPrefix));
+            }
+        }
+
+        synchronized (statistics) {
+            statistics.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Applies the start index of filtered queries after the filter, unfiltered queries skip the
+     * sheets before the start index.
+     */
+    @Override
+    public FeatureReader<SimpleFeatureType, SimpleFeature> getFeatureReader(Query query,
+            Transaction transaction) throws IOException {
+        final int startIndex = NGIFeatureReader.getStartIndex(query);
+        if (startIndex == 0 || NGIFeatureReader.isInclude(query.getFilter())) {
+            return super.getFeatureReader(query, transaction);
+        }
+
+        Query unpaged = NGIFeatureReader.getUnpagedQuery(query);
+        return NGIFeatureReader.skipFeatures(super.getFeatureReader(unpaged, transaction),
+                startIndex);
+    }
+
+    @Override
+    protected FeatureReader<SimpleFeatureType, SimpleFeature> getFeatureReader(String typeName)
+            throws IOException {
+        return getFeatureReader(typeName, Filter.INCLUDE, null);
+    }
+
+    @Override
+    protected FeatureReader<SimpleFeatureType, SimpleFeature> getFeatureReader(String typeName,
+            Query query) throws IOException {
+        return getFeatureReader(typeName, query.getFilter(), query);
+    }
+
+    private FeatureReader<SimpleFeatureType, SimpleFeature> getFeatureReader(String typeName,
+            Filter filter, Query query) throws IOException {
+        SimpleFeatureType featureType = getSchema(typeName);
+        if (featureType == null) {
+            throw new IOException(typeName + " does not exist!");
+        }
+
+        Envelope envelope = NGIFeatureReader.getFilterEnvelope(filter, featureType);
+        List<NGISheet> candidates = getSheets(typeName, envelope);
+
+        Set<String> featureIds = NGIFeatureReader.getFeatureIds(filter);
+        if (featureIds != null) {
+            candidates = getSheets(candidates, typeName, featureIds);
+        }
+        LOGGER.log(Level.FINE, typeName + ": " + candidates.size() + " of " + sheets.size()
+                + " map sheets");
+
+        // the page of unfiltered queries starts in the sheet holding the start index
+        int startIndex = 0;
+        if (query != null && NGIFeatureReader.isInclude(filter)) {
+            startIndex = NGIFeatureReader.getStartIndex(query);
+            int first = 0;
+            for (; first < candidates.size(); first++) {
+                NGISheet sheet = candidates.get(first);
+                getDataStore(sheet);
+                final int count = sheet.getCount(typeName);
+                if (startIndex < count) {
+                    break;
+                }
+                startIndex -= count;
+            }
+            candidates = candidates.subList(first, candidates.size());
+        }
+
+        if (query != null && !query.retrieveAllProperties()) {
+            featureType = NGIDataStore.getReadSchema(featureType, query);
+        }
+        return new NGISheetFeatureReader(this, featureType, candidates, query, startIndex);
+    }
+
+    /**
+     * Returns the sheets named by the feature ids(typeName.sheet.record)
+     */
+    private List<NGISheet> getSheets(List<NGISheet> candidates, String typeName,
+            Set<String> featureIds) {
+        final String prefix = typeName + ".";
+        Set<String> sheetNames = new HashSet<String>();
+        for (String id : featureIds) {
+            final int pos = id.lastIndexOf('.');
+            if (id.startsWith(prefix) && pos > prefix.length()) {
+                sheetNames.add(id.substring(prefix.length(), pos));
+            }
+        }
+
+        List<NGISheet> result = new ArrayList<NGISheet>();
+        for (NGISheet sheet : candidates) {
+            if (sheetNames.contains(sheet.getName())) {
+                result.add(sheet);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public SimpleFeatureSource getFeatureSource(final String typeName) {
+        try {
+            return new NGIFeatureSource(this, Collections.EMPTY_SET, getSchema(typeName));
+        } catch (IOException e) {
+            LOGGER.log(Level.FINER, e.getMessage(), e);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.awt.RenderingHints.Key;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.AbstractDataStoreFactory;
+import org.geotools.data.DataStore;
+import org.geotools.data.DataStoreFactorySpi;
+import org.geotools.data.DataUtilities;
+import org.geotools.referencing.CRS;
+import org.geotools.util.KVP;
+import org.geotools.util.logging.Logging;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.NoSuchAuthorityCodeException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * NGI Directory DataStoreFactory
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGIDirectoryDataStoreFactory extends AbstractDataStoreFactory implements
+        DataStoreFactorySpi {
+    protected static final Logger LOGGER = Logging.getLogger(NGIDirectoryDataStoreFactory.class);
+
+    public static final Param PARAM_DIRECTORY = new Param("url", URL.class,
+            "url to a directory of .ngi/.nda map sheets", true);
+
+    public static final Param PARAM_SRS = NGIDataStoreFactory.PARAM_SRS;
+
+    public static final Param PARAM_CHARSET = NGIDataStoreFactory.PARAM_CHARSET;
+
+    public static final Param PARAM_THREADS = new Param("threads", Integer.class,
+            "number of map sheets cataloged concurrently", false,
+            Integer.valueOf(NGIExecutors.getDefaultThreads()), new KVP(Param.LEVEL, "advanced"));
+
+    public static final Param PARAM_MAP_INDEX = new Param("map index", Boolean.class,
+            "select the map sheets by the extent of their map index numbers(file names)", false,
+            Boolean.FALSE, new KVP(Param.LEVEL, "advanced"));
+
+    public String getDisplayName() {
+        return "NGI Directory";
+    }
+
+    public String getDescription() {
+        return "Directory of NGI ASCII map sheets (*.ngi)";
+    }
+
+    public Param[] getParametersInfo() {
+        return new Param[] { PARAM_DIRECTORY, PARAM_SRS, PARAM_CHARSET, PARAM_THREADS,
+                PARAM_MAP_INDEX };
+    }
+
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<Key, ?> getImplementationHints() {
+        return Collections.EMPTY_MAP;
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public boolean canProcess(Map params) {
+        boolean result = false;
+        if (params.containsKey(PARAM_DIRECTORY.key)) {
+            try {
+                URL url = (URL) PARAM_DIRECTORY.lookUp(params);
+                File file = DataUtilities.urlToFile(url);
+                result = file != null && file.isDirectory();
+            } catch (IOException ioe) {
+                /* return false on any exception */
+            }
+        }
+        return result;
+    }
+
+    public DataStore createDataStore(Map<String, Serializable> params) throws IOException {
+        URL url = (URL) PARAM_DIRECTORY.lookUp(params);
+        String code = (String) PARAM_SRS.lookUp(params);
+        String charset = (String) PARAM_CHARSET.lookUp(params);
+        Integer threads = (Integer) PARAM_THREADS.lookUp(params);
+        Boolean mapIndex = (Boolean) PARAM_MAP_INDEX.lookUp(params);
+
+        if (charset == null || charset.isEmpty()) {
+            charset = (String) PARAM_CHARSET.sample;
+        }
+
+        CoordinateReferenceSystem crs = null;
+        if (code != null && !code.isEmpty()) {
+            try {
+                crs = CRS.decode(code);
+            } catch (NoSuchAuthorityCodeException e) {
+                LOGGER.log(Level.WARNING, e.getMessage(), e);
+            } catch (FactoryException e) {
+                LOGGER.log(Level.WARNING, e.getMessage(), e);
+            }
+        }
+
+        if (threads == null) {
+            threads = Integer.valueOf(NGIExecutors.getDefaultThreads());
+        }
+        return new NGIDirectoryDataStore(DataUtilities.urlToFile(url), Charset.forName(charset),
+                crs, threads.intValue(), mapIndex != null && mapIndex.booleanValue());
+    }
+
+    public DataStore createNewDataStore(Map<String, Serializable> params) throws IOException {
+        return null;
+    }
+
+}
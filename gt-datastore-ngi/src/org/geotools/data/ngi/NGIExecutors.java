@@ -0,0 +1,130 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded thread pools used to read the layers of NGI files concurrently.
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public final class NGIExecutors {
+
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger(1);
+
+    private NGIExecutors() {
+    }
+
+    public static int getDefaultThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Creates a fixed pool of daemon threads, the caller must shut it down.
+     */
+    public static ExecutorService newExecutor(int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ngi-reader-"
+                        + THREAD_NUMBER.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Runs the tasks on at most threads threads and returns their results in task order. A single
+     * task or thread runs on the calling thread.
+     */
+    public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks, int threads)
+            throws IOException {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (tasks.size() <= 1 || threads <= 1) {
+            for (Callable<T> task : tasks) {
+                results.add(call(task));
+            }
+            return results;
+        }
+
+        ExecutorService executor = newExecutor(Math.min(threads, tasks.size()));
+        try {
+            List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+
+            for (Future<T> future : futures) {
+                results.add(get(future));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Waits for the result of the future, rethrowing the failure of the task as IOException.
+     */
+    public static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new IOException("Interrupted while reading NGI layers");
+        } catch (ExecutionException e) {
+            throw toIOException(e.getCause());
+        }
+    }
+
+    private static <T> T call(Callable<T> task) throws IOException {
+        try {
+            return task.call();
+        } catch (Exception e) {
+            throw toIOException(e);
+        }
+    }
+
+    private static IOException toIOException(Throwable cause) {
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+
+        IOException ioe = new IOException(cause.getMessage());
+        ioe.initCause(cause);
+        return ioe;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Cache of the decoded features of NGI layers. The least recently used layers beyond the memory
+ * budget are only softly referenced, so the garbage collector may release them. The entries are
+ * invalidated when the modification time of the NGI or NDA file changes.
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGIFeatureCache {
+    protected static final Logger LOGGER = Logging.getLogger(NGIFeatureCache.class);
+
+    // approximate heap cost of a feature, an attribute value and a coordinate
+    static final int FEATURE_SIZE = 64;
+
+    static final int VALUE_SIZE = 24;
+
+    static final int COORDINATE_SIZE = 16;
+
+    static final int GEOMETRY_SIZE = 80;
+
+    private final File ngiFile;
+
+    private final File ndaFile;
+
+    private final long maxMemory;
+
+    // memory of the strongly referenced layers
+    private long memory = 0;
+
+    // least recently used first
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    public NGIFeatureCache(File ngiFile, File ndaFile, long maxMemory) {
+        this.ngiFile = ngiFile;
+        this.ndaFile = ndaFile;
+        this.maxMemory = maxMemory;
+    }
+
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    public synchronized long getMemory() {
+        return memory;
+    }
+
+    /**
+     * Returns the modification stamp of the NGI/NDA files, taken before reading a layer
+     */
+    public long[] getModified() {
+        return new long[] { ngiFile.lastModified(), ndaFile.lastModified() };
+    }
+
+    /**
+     * Returns the cached features of the layer, null if the layer is not cached, has been
+     * released by the garbage collector or the files have been modified.
+     */
+    public synchronized List<SimpleFeature> get(String typeName) {
+        Entry entry = entries.get(typeName);
+        if (entry == null) {
+            return null;
+        }
+
+        List<SimpleFeature> features = entry.features;
+        if (features == null) {
+            features = entry.softFeatures.get();
+        }
+
+        if (features == null || !Arrays.equals(entry.modified, getModified())) {
+            remove(typeName);
+            return null;
+        }
+
+        if (entry.features == null) {
+            // used again, referenced strongly
+            entry.features = features;
+            memory += entry.memory;
+            trim(entry);
+        }
+        return features;
+    }
+
+    /**
+     * Caches the features of the layer read from the files of the given modification stamp.
+     */
+    public synchronized void put(String typeName, List<SimpleFeature> features, long size,
+            long[] modified) {
+        if (!isCacheable(size) || !Arrays.equals(modified, getModified())) {
+            return; // modified while reading
+        }
+
+        remove(typeName);
+        Entry entry = new Entry(features, size, modified);
+        entries.put(typeName, entry);
+        memory += size;
+        trim(entry);
+    }
+
+    public synchronized void remove(String typeName) {
+        Entry entry = entries.remove(typeName);
+        if (entry != null && entry.features != null) {
+            memory -= entry.memory;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        memory = 0;
+    }
+
+    public boolean isCacheable(long size) {
+        return size <= maxMemory;
+    }
+
+    /**
+     * Returns the approximate heap size of the feature
+     */
+    public static long estimateMemory(SimpleFeature feature) {
+        long size = FEATURE_SIZE;
+        for (Object value : feature.getAttributes()) {
+            if (value instanceof Geometry) {
+                Geometry geometry = (Geometry) value;
+                size += GEOMETRY_SIZE * geometry.getNumGeometries() + COORDINATE_SIZE
+                        * (long) geometry.getNumPoints();
+            } else if (value instanceof String) {
+                size += VALUE_SIZE + 2 * ((String) value).length();
+            } else if (value != null) {
+                size += VALUE_SIZE;
+            }
+        }
+        return size;
+    }
+
+    // keeps only soft references to the least recently used layers beyond the budget
+    private void trim(Entry current) {
+        Iterator<Entry> iter = entries.values().iterator();
+        while (memory > maxMemory && iter.hasNext()) {
+            Entry eldest = iter.next();
+            if (eldest != current && eldest.features != null) {
+                eldest.features = null;
+                memory -= eldest.memory;
+                LOGGER.log(Level.FINE, "NGI feature cache: " + memory + " of " + maxMemory);
+            }
+        }
+    }
+
+    static final class Entry {
+        // null once released to the soft reference
+        List<SimpleFeature> features;
+
+        final SoftReference<List<SimpleFeature>> softFeatures;
+
+        final long memory;
+
+        final long[] modified;
+
+        Entry(List<SimpleFeature> features, long memory, long[] modified) {
+            this.features = features;
+            this.softFeatures = new SoftReference<List<SimpleFeature>>(features);
+            this.memory = memory;
+            this.modified = modified;
+        }
+    }
+}
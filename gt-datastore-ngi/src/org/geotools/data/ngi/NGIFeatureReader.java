@@ -17,13 +17,29 @@
 package org.geotools.data.ngi;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.filter.visitor.ExtractBoundsFilterVisitor;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
 import org.geotools.util.logging.Logging;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.And;
+import org.opengis.filter.Filter;
+import org.opengis.filter.Id;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.TransformException;
+
+import com.vividsolutions.jts.geom.Envelope;
 
 /**
  * NGI FeatureReader
@@ -43,6 +59,192 @@ public class NGIFeatureReader implements FeatureReader<SimpleFeatureType, Simple
         this.reader.setSchema(featureType);
     }
 
+    public NGIFeatureReader(NGIReader reader, NGILayerInfo layer) {
+        this.reader = reader;
+        this.reader.setLayer(layer);
+    }
+
+    /**
+     * Creates a reader which skips the records outside of the bounding box of the filter. The
+     * filter itself is not evaluated.
+     */
+    public NGIFeatureReader(NGIReader reader, NGILayerInfo layer, Filter filter) {
+        this(reader, layer, layer.getSchema(), filter);
+    }
+
+    /**
+     * Creates a reader which returns the attributes of featureType, a sub type of the layer
+     * schema, and skips the records outside of the bounding box of the filter.
+     */
+    public NGIFeatureReader(NGIReader reader, NGILayerInfo layer, SimpleFeatureType featureType,
+            Filter filter) {
+        this.reader = reader;
+        this.reader.setLayer(layer, featureType);
+        this.reader.setFilterEnvelope(getFilterEnvelope(filter, layer.getSchema()));
+    }
+
+    static Envelope getFilterEnvelope(Filter filter, SimpleFeatureType featureType) {
+        if (filter == null || filter == Filter.INCLUDE) {
+            return null;
+        }
+
+        Envelope bbox = (Envelope) filter.accept(ExtractBoundsFilterVisitor.BOUNDS_VISITOR, null);
+        if (bbox == null || bbox.isNull()) {
+            return null;
+        }
+
+        if (Double.isInfinite(bbox.getWidth()) && Double.isInfinite(bbox.getHeight())) {
+            return null; // no spatial constraint
+        }
+
+        CoordinateReferenceSystem crs = featureType.getCoordinateReferenceSystem();
+        if (bbox instanceof ReferencedEnvelope && crs != null) {
+            ReferencedEnvelope envelope = (ReferencedEnvelope) bbox;
+            CoordinateReferenceSystem bboxCrs = envelope.getCoordinateReferenceSystem();
+            if (bboxCrs != null && !CRS.equalsIgnoreMetadata(bboxCrs, crs)) {
+                try {
+                    return envelope.transform(crs, true);
+                } catch (TransformException e) {
+                    LOGGER.log(Level.FINER, e.getMessage(), e);
+                } catch (FactoryException e) {
+                    LOGGER.log(Level.FINER, e.getMessage(), e);
+                }
+                return null;
+            }
+        }
+        return bbox;
+    }
+
+    /**
+     * Returns the feature ids required by the filter(Id filter or And with Id filters), null if
+     * the filter does not restrict the feature ids.
+     */
+    static Set<String> getFeatureIds(Filter filter) {
+        if (filter instanceof Id) {
+            Set<String> ids = new HashSet<String>();
+            for (Object id : ((Id) filter).getIDs()) {
+                if (id != null) {
+                    ids.add(id.toString());
+                }
+            }
+            return ids;
+        } else if (filter instanceof And) {
+            Set<String> result = null;
+            for (Filter child : ((And) filter).getChildren()) {
+                Set<String> ids = getFeatureIds(child);
+                if (ids == null) {
+                    continue;
+                } else if (result == null) {
+                    result = ids;
+                } else {
+                    result.retainAll(ids);
+                }
+            }
+            return result;
+        }
+        return null;
+    }
+
+    /**
+     * Converts the feature ids(prefix + record number) to the ascending zero based record
+     * positions of a layer, the ids of other layers are ignored.
+     */
+    static int[] getRecordSelection(Set<String> ids, String prefix, int count) {
+        int[] selection = new int[ids.size()];
+        int size = 0;
+        for (String id : ids) {
+            if (!id.startsWith(prefix)) {
+                continue;
+            }
+
+            try {
+                final String number = id.substring(prefix.length());
+                final int record = Integer.parseInt(number) - 1;
+                // 건물.07 does not match the feature 건물.7
+                if (record >= 0 && record < count && number.equals(String.valueOf(record + 1))) {
+                    selection[size++] = record;
+                }
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.FINEST, e.getMessage(), e);
+            }
+        }
+
+        Arrays.sort(selection, 0, size);
+        return Arrays.copyOf(selection, size);
+    }
+
+    static boolean isInclude(Filter filter) {
+        return filter == null || filter == Filter.INCLUDE;
+    }
+
+    static int getStartIndex(Query query) {
+        Integer startIndex = query == null ? null : query.getStartIndex();
+        return startIndex == null ? 0 : Math.max(0, startIndex.intValue());
+    }
+
+    static boolean isPaged(Query query) {
+        return getStartIndex(query) > 0 || query.getMaxFeatures() != Query.DEFAULT_MAX;
+    }
+
+    /**
+     * Returns the number of features of the page(start index, max features) of the query
+     */
+    static int getPageCount(int count, Query query) {
+        count = Math.max(0, count - getStartIndex(query));
+        return Math.min(count, query.getMaxFeatures());
+    }
+
+    /**
+     * Returns the record positions of the page of an unfiltered query, null if the query reads
+     * all records.
+     */
+    static int[] getRecordSelection(Query query, int count) {
+        final int startIndex = getStartIndex(query);
+        if (startIndex == 0 && query.getMaxFeatures() >= count) {
+            return null;
+        }
+
+        final long end = Math.min(count, (long) startIndex + query.getMaxFeatures());
+        int[] selection = new int[(int) Math.max(0, end - startIndex)];
+        for (int index = 0; index < selection.length; index++) {
+            selection[index] = startIndex + index;
+        }
+        return selection;
+    }
+
+    /**
+     * Returns a copy of the query without start index, which reads the features up to the end of
+     * the page.
+     */
+    static Query getUnpagedQuery(Query query) {
+        Query unpaged = new Query(query);
+        unpaged.setStartIndex(null);
+        if (query.getMaxFeatures() != Query.DEFAULT_MAX) {
+            long end = (long) getStartIndex(query) + query.getMaxFeatures();
+            unpaged.setMaxFeatures((int) Math.min(end, Query.DEFAULT_MAX));
+        }
+        return unpaged;
+    }
+
+    /**
+     * Skips the features before the start index of a filtered query
+     */
+    static FeatureReader<SimpleFeatureType, SimpleFeature> skipFeatures(
+            FeatureReader<SimpleFeatureType, SimpleFeature> reader, int count) throws IOException {
+        try {
+            for (int index = 0; index < count && reader.hasNext(); index++) {
+                reader.next();
+            }
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        } catch (RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+        return reader;
+    }
+
     @Override
     public SimpleFeatureType getFeatureType() {
         return reader.getSchema();
@@ -19,9 +19,11 @@ package org.geotools.data.ngi;
 import java.util.Set;
 import java.util.logging.Logger;
 
+import org.geotools.data.AbstractDataStore;
 import org.geotools.data.AbstractFeatureSource;
 import org.geotools.data.DataStore;
 import org.geotools.data.FeatureListener;
+import org.geotools.data.QueryCapabilities;
 import org.geotools.util.logging.Logging;
 import org.opengis.feature.simple.SimpleFeatureType;
 
@@ -37,12 +39,25 @@ import org.opengis.feature.simple.SimpleFeatureType;
 public class NGIFeatureSource extends AbstractFeatureSource {
     protected static final Logger LOGGER = Logging.getLogger(NGIFeatureSource.class);
 
-    private final NGIDataStore dataStore;
+    // start index and max features are applied while reading the records
+    private static final QueryCapabilities CAPABILITIES = new QueryCapabilities() {
+        @Override
+        public boolean isOffsetSupported() {
+            return true;
+        }
+
+        @Override
+        public boolean isReliableFIDSupported() {
+            return true;
+        }
+    };
+
+    private final AbstractDataStore dataStore;
 
     private final SimpleFeatureType featureType;
 
     @SuppressWarnings("rawtypes")
-    public NGIFeatureSource(NGIDataStore dataStore, Set hints, SimpleFeatureType featureType) {
+    public NGIFeatureSource(AbstractDataStore dataStore, Set hints, SimpleFeatureType featureType) {
         super(hints);
         this.dataStore = dataStore;
         this.featureType = featureType;
@@ -63,4 +78,9 @@ public class NGIFeatureSource extends AbstractFeatureSource {
     public SimpleFeatureType getSchema() {
         return featureType;
     }
+
+    @Override
+    public QueryCapabilities getQueryCapabilities() {
+        return CAPABILITIES;
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import org.geotools.data.FeatureWriter;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * NGI FeatureWriter, appends the features to a new NGI layer through {@link NGIWriter}.
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGIFeatureWriter implements FeatureWriter<SimpleFeatureType, SimpleFeature> {
+    protected static final Logger LOGGER = Logging.getLogger(NGIFeatureWriter.class);
+
+    private final NGIDataStore dataStore;
+
+    private NGIWriter writer;
+
+    private final SimpleFeatureBuilder builder;
+
+    private SimpleFeature current;
+
+    public NGIFeatureWriter(NGIDataStore dataStore, NGIWriter writer) {
+        this.dataStore = dataStore;
+        this.writer = writer;
+        this.builder = new SimpleFeatureBuilder(writer.getSchema());
+    }
+
+    @Override
+    public SimpleFeatureType getFeatureType() {
+        return writer.getSchema();
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        // NGI layers are written once, there are no existing features
+        return false;
+    }
+
+    @Override
+    public SimpleFeature next() throws IOException {
+        if (writer == null) {
+            throw new IOException("Writer has been closed");
+        }
+        current = builder.buildFeature(writer.getSchema().getTypeName() + "."
+                + (writer.getCount() + 1));
+        return current;
+    }
+
+    @Override
+    public void remove() throws IOException {
+        // the feature has not been written yet
+        current = null;
+    }
+
+    @Override
+    public void write() throws IOException {
+        if (current == null) {
+            throw new IOException("No feature to write, call next() first");
+        }
+        writer.write(current);
+        current = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            try {
+                writer.close();
+            } finally {
+                writer = null;
+                dataStore.reload();
+            }
+        }
+    }
+}
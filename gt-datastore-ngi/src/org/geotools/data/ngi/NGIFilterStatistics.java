@@ -0,0 +1,64 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Number and extent of the records of a NGI layer matching a filter. The extent is the union of
+ * the record envelopes of the record index, so the geometries are not needed.
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGIFilterStatistics {
+
+    private int count = 0;
+
+    private final ReferencedEnvelope bounds;
+
+    public NGIFilterStatistics(CoordinateReferenceSystem crs) {
+        this.bounds = new ReferencedEnvelope(crs);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns a copy of the extent, an empty envelope if no record matches
+     */
+    public ReferencedEnvelope getBounds() {
+        return new ReferencedEnvelope(bounds);
+    }
+
+    void add(NGIRecordIndex records, int record) {
+        count++;
+        if (!records.isEmpty(record)) {
+            bounds.expandToInclude(records.getMinX(record), records.getMinY(record));
+            bounds.expandToInclude(records.getMaxX(record), records.getMaxY(record));
+        }
+    }
+
+    void add(NGIFilterStatistics statistics) {
+        count += statistics.count;
+        bounds.expandToInclude(statistics.bounds);
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.util.logging.Logging;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * NGI sidecar index file(*.ngx)
+ * <p>
+ * Stores the layer catalog, the per-record NGI/NDA byte offsets and the per-record envelopes of
+ * a NGI/NDA pair so that the files do not have to be parsed again. The index is stamped with the
+ * size and the modification time of both files and is ignored when they do not match.
+ * </p>
+ *
+ * <pre>
+ * header  : magic, version, ngi length, ngi modified, nda length, nda modified, catalog offset
+ * records : per layer, (ngi offset, nda offset, minx, miny, maxx, maxy) * count
+ * catalog : charset, layer count, per layer entry
+ * </pre>
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGIIndexFile {
+    protected static final Logger LOGGER = Logging.getLogger(NGIIndexFile.class);
+
+    static final String FILE_EXTENSION = ".ngx";
+
+    static final int MAGIC = 0x4E475831; // NGX1
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 4 + 4 + 8 * 5;
+
+    static final int RECORD_SIZE = 8 * 2 + 8 * 4;
+
+    final File file;
+
+    final File ngiFile;
+
+    final File ndaFile;
+
+    final Charset charset;
+
+    public NGIIndexFile(File ngiFile, File ndaFile, Charset charset) {
+        this.file = getIndexFile(ngiFile);
+        this.ngiFile = ngiFile;
+        this.ndaFile = ndaFile;
+        this.charset = charset;
+    }
+
+    public static File getIndexFile(File ngiFile) {
+        final String path = ngiFile.getPath();
+        final int pos = path.lastIndexOf('.');
+        return new File((pos == -1 ? path : path.substring(0, pos)) + FILE_EXTENSION);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Reads the layer catalog.
+     *
+     * @return null if the index does not exist or is stale
+     */
+    public List<NGILayerInfo> readCatalog(CoordinateReferenceSystem crs) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(file);
+            FileChannel channel = fis.getChannel();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) != -1) {
+                // read fully
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC
+                    || header.getInt() != VERSION) {
+                return null;
+            }
+
+            if (header.getLong() != ngiFile.length() || header.getLong() != ngiFile.lastModified()) {
+                return null;
+            }
+
+            final boolean hasNda = ndaFile.exists();
+            if (header.getLong() != (hasNda ? ndaFile.length() : -1)
+                    || header.getLong() != (hasNda ? ndaFile.lastModified() : -1)) {
+                return null;
+            }
+
+            channel.position(header.getLong());
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel)));
+            if (!charset.name().equals(in.readUTF())) {
+                return null;
+            }
+
+            final int layerCount = in.readInt();
+            List<NGILayerInfo> layers = new ArrayList<NGILayerInfo>(layerCount);
+            for (int index = 0; index < layerCount; index++) {
+                NGILayerInfo layer = new NGILayerInfo(in.readUTF());
+
+                final String geometryType = in.readUTF();
+                if (geometryType.length() > 0) {
+                    layer.geometryType = Class.forName(geometryType);
+                }
+
+                final int attributeCount = in.readInt();
+                for (int attIndex = 0; attIndex < attributeCount; attIndex++) {
+                    layer.attributes.add(in.readUTF());
+                }
+
+                if (in.readBoolean()) {
+                    // minx, maxx, miny, maxy
+                    layer.bounds = new ReferencedEnvelope(in.readDouble(), in.readDouble(),
+                            in.readDouble(), in.readDouble(), crs);
+                }
+
+                layer.count = in.readInt();
+                layer.ngiLayerOffset = in.readLong();
+                layer.ngiRecordOffset = in.readLong();
+                layer.ngiEndOffset = in.readLong();
+                layer.ndaLayerOffset = in.readLong();
+                layer.ndaRecordOffset = in.readLong();
+                layer.ndaEndOffset = in.readLong();
+                layer.indexOffset = in.readLong();
+                layers.add(layer);
+            }
+            return layers;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINER, e.getMessage(), e);
+        } catch (ClassNotFoundException e) {
+            LOGGER.log(Level.FINER, e.getMessage(), e);
+        } finally {
+            IOUtils.closeQuietly(fis);
+        }
+        return null;
+    }
+
+    /**
+     * Reads the per-record offsets and envelopes of a layer from the index
+     */
+    public NGIRecordIndex readRecords(NGILayerInfo layer) throws IOException {
+        final int count = layer.getCount();
+        NGIRecordIndex records = new NGIRecordIndex(count);
+        if (count == 0) {
+            return records;
+        }
+
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(file);
+            FileChannel channel = fis.getChannel();
+
+            ByteBuffer buffer = ByteBuffer.allocate(count * RECORD_SIZE);
+            long position = layer.indexOffset;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read == -1) {
+                    throw new IOException("Unexpected end of index file: " + file);
+                }
+                position += read;
+            }
+            buffer.flip();
+
+            for (int index = 0; index < count; index++) {
+                records.add(buffer.getLong());
+                records.setNdaOffset(index, buffer.getLong());
+                records.setEnvelope(index, buffer.getDouble(), buffer.getDouble(),
+                        buffer.getDouble(), buffer.getDouble());
+            }
+        } finally {
+            IOUtils.closeQuietly(fis);
+        }
+        return records;
+    }
+
+    /**
+     * Writes the index. The layers must hold their record index.
+     */
+    public void write(Collection<NGILayerInfo> layers) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tempFile);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024));
+
+            final boolean hasNda = ndaFile.exists();
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(ngiFile.length());
+            out.writeLong(ngiFile.lastModified());
+            out.writeLong(hasNda ? ndaFile.length() : -1);
+            out.writeLong(hasNda ? ndaFile.lastModified() : -1);
+            out.writeLong(0); // catalog offset
+
+            long position = HEADER_SIZE;
+            for (NGILayerInfo layer : layers) {
+                NGIRecordIndex records = layer.records;
+                layer.indexOffset = position;
+                for (int index = 0; index < layer.getCount(); index++) {
+                    out.writeLong(records.getNgiOffset(index));
+                    out.writeLong(records.getNdaOffset(index));
+                    out.writeDouble(records.getMinX(index));
+                    out.writeDouble(records.getMinY(index));
+                    out.writeDouble(records.getMaxX(index));
+                    out.writeDouble(records.getMaxY(index));
+                }
+                position += (long) layer.getCount() * RECORD_SIZE;
+            }
+
+            final long catalogOffset = position;
+            out.writeUTF(charset.name());
+            out.writeInt(layers.size());
+            for (NGILayerInfo layer : layers) {
+                out.writeUTF(layer.getName());
+                out.writeUTF(layer.geometryType == null ? "" : layer.geometryType.getName());
+                out.writeInt(layer.attributes.size());
+                for (String attribute : layer.attributes) {
+                    out.writeUTF(attribute);
+                }
+
+                final boolean hasBounds = layer.bounds != null && !layer.bounds.isNull();
+                out.writeBoolean(hasBounds);
+                if (hasBounds) {
+                    out.writeDouble(layer.bounds.getMinX());
+                    out.writeDouble(layer.bounds.getMaxX());
+                    out.writeDouble(layer.bounds.getMinY());
+                    out.writeDouble(layer.bounds.getMaxY());
+                }
+
+                out.writeInt(layer.count);
+                out.writeLong(layer.ngiLayerOffset);
+                out.writeLong(layer.ngiRecordOffset);
+                out.writeLong(layer.ngiEndOffset);
+                out.writeLong(layer.ndaLayerOffset);
+                out.writeLong(layer.ndaRecordOffset);
+                out.writeLong(layer.ndaEndOffset);
+                out.writeLong(layer.indexOffset);
+            }
+            out.flush();
+
+            ByteBuffer buffer = ByteBuffer.allocate(8);
+            buffer.putLong(catalogOffset).flip();
+            fos.getChannel().write(buffer, HEADER_SIZE - 8);
+        } finally {
+            fos.close();
+        }
+
+        if (file.exists() && !file.delete()) {
+            tempFile.delete();
+            throw new IOException("Could not replace index file: " + file);
+        }
+
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Could not create index file: " + file);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * NGI Layer catalog entry: schema, extent, record count and the byte offsets of the layer in the
+ * NGI and NDA files.
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGILayerInfo {
+
+    final String name;
+
+    SimpleFeatureType schema;
+
+    ReferencedEnvelope bounds;
+
+    int count = 0;
+
+    // raw geometry type from MASK(...) and ATTRIB(...) definitions, used to rebuild the schema
+    Class<?> geometryType;
+
+    final List<String> attributes = new ArrayList<String>();
+
+    // per-record offsets and envelopes, loaded on demand
+    NGIRecordIndex records;
+
+    // position of the record block in the .ngx index file
+    long indexOffset = -1;
+
+    // NGI offsets: $LAYER_NAME, first $RECORD, <LAYER_END>
+    long ngiLayerOffset = -1;
+
+    long ngiRecordOffset = -1;
+
+    long ngiEndOffset = -1;
+
+    // NDA offsets: $LAYER_NAME, first $RECORD, <LAYER_END>
+    long ndaLayerOffset = -1;
+
+    long ndaRecordOffset = -1;
+
+    long ndaEndOffset = -1;
+
+    // memory mapped columnar cache, loaded or written on the first read
+    NGIColumnarLayer columnar;
+
+    // true once the columnar cache could not be loaded or written
+    boolean columnarFailed = false;
+
+    // NDA values shared by the readers of the layer, created on demand
+    private NGIValueDictionary dictionary;
+
+    public NGILayerInfo(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public SimpleFeatureType getSchema() {
+        return schema;
+    }
+
+    public ReferencedEnvelope getBounds() {
+        return bounds;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public Class<?> getGeometryType() {
+        return geometryType;
+    }
+
+    public List<String> getAttributes() {
+        return attributes;
+    }
+
+    public long getNgiLayerOffset() {
+        return ngiLayerOffset;
+    }
+
+    public long getNgiRecordOffset() {
+        return ngiRecordOffset;
+    }
+
+    public long getNgiEndOffset() {
+        return ngiEndOffset;
+    }
+
+    public long getNdaLayerOffset() {
+        return ndaLayerOffset;
+    }
+
+    public long getNdaRecordOffset() {
+        return ndaRecordOffset;
+    }
+
+    public long getNdaEndOffset() {
+        return ndaEndOffset;
+    }
+
+    /**
+     * Returns the value dictionary shared by the readers of the layer
+     */
+    public synchronized NGIValueDictionary getDictionary() {
+        if (dictionary == null) {
+            dictionary = new NGIValueDictionary();
+        }
+        return dictionary;
+    }
+
+    public boolean hasAttributes() {
+        return ndaRecordOffset != -1;
+    }
+
+    @Override
+    public String toString() {
+        return name + "[count=" + count + ", ngi=" + ngiRecordOffset + "-" + ngiEndOffset
+                + ", nda=" + ndaRecordOffset + "-" + ndaEndOffset + "]";
+    }
+}
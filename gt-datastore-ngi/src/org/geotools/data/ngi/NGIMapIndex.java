@@ -0,0 +1,170 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.util.logging.Logging;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.TransformException;
+
+/**
+ * Korean map index number(도엽번호) calculator, returns the extent of a map sheet from its number
+ * without reading the sheet.
+ * 
+ * <pre>
+ * 1:50000  35610       latitude(35) + longitude(12'6') + 1~16 of the 1 degree cell(4 x 4, 15')
+ * 1:25000  356101      1:50000 + 1~4 (2 x 2, 7.5')
+ * 1:5000   35610069    1:50000 + 001~100 (10 x 10, 1.5')
+ * 1:1000   3561006901  1:5000 + 01~25 (5 x 5, 0.3')
+ * </pre>
+ * 
+ * The sheets are numbered from the north west corner, row by row.
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public final class NGIMapIndex {
+    protected static final Logger LOGGER = Logging.getLogger(NGIMapIndex.class);
+
+    public static final int SCALE_50000 = 50000;
+
+    public static final int SCALE_25000 = 25000;
+
+    public static final int SCALE_5000 = 5000;
+
+    public static final int SCALE_1000 = 1000;
+
+    private NGIMapIndex() {
+    }
+
+    /**
+     * Returns the scale of the map index number, 0 if the name is not a map index number
+     */
+    public static int getScale(String sheetNumber) {
+        return getExtent(sheetNumber) == null ? 0 : getScale(sheetNumber.length());
+    }
+
+    private static int getScale(int length) {
+        switch (length) {
+        case 5:
+            return SCALE_50000;
+        case 6:
+            return SCALE_25000;
+        case 8:
+            return SCALE_5000;
+        case 10:
+            return SCALE_1000;
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the extent of the map sheet in geographic coordinates(longitude, latitude), null if
+     * the name is not a map index number
+     */
+    public static ReferencedEnvelope getExtent(String sheetNumber) {
+        if (sheetNumber == null || getScale(sheetNumber.length()) == 0) {
+            return null;
+        }
+
+        for (int index = 0; index < sheetNumber.length(); index++) {
+            if (!Character.isDigit(sheetNumber.charAt(index))) {
+                return null;
+            }
+        }
+
+        // 1 degree cell: 35 -> 35N, 6 -> 126E (4~9 -> 124~129E, 0~1 -> 130~131E)
+        final int latitude = Integer.parseInt(sheetNumber.substring(0, 2));
+        final int lonDigit = sheetNumber.charAt(2) - '0';
+        final int longitude = lonDigit >= 4 ? 120 + lonDigit : 130 + lonDigit;
+
+        // [minX, maxY, cell size], subdivided from the north west corner
+        double[] cell = { longitude, latitude + 1, 1.0 };
+        if (!subdivide(cell, sheetNumber.substring(3, 5), 4)) {
+            return null;
+        }
+
+        final int scale = getScale(sheetNumber.length());
+        if (scale == SCALE_25000 && !subdivide(cell, sheetNumber.substring(5, 6), 2)) {
+            return null;
+        } else if (scale == SCALE_5000 || scale == SCALE_1000) {
+            if (!subdivide(cell, sheetNumber.substring(5, 8), 10)) {
+                return null;
+            }
+            if (scale == SCALE_1000 && !subdivide(cell, sheetNumber.substring(8, 10), 5)) {
+                return null;
+            }
+        }
+
+        return new ReferencedEnvelope(cell[0], cell[0] + cell[2], cell[1] - cell[2], cell[1],
+                DefaultGeographicCRS.WGS84);
+    }
+
+    /**
+     * Returns the extent of the map sheet in the given crs, expanded by margin times the sheet
+     * size on each side. The margin absorbs datum differences of old(Bessel) sheets and features
+     * drawn across the sheet border. Returns null if the name is not a map index number or the
+     * extent can not be transformed.
+     */
+    public static ReferencedEnvelope getExtent(String sheetNumber,
+            CoordinateReferenceSystem crs, double margin) {
+        ReferencedEnvelope extent = getExtent(sheetNumber);
+        if (extent == null) {
+            return null;
+        }
+
+        if (margin > 0) {
+            extent.expandBy(extent.getWidth() * margin, extent.getHeight() * margin);
+        }
+
+        if (crs == null || CRS.equalsIgnoreMetadata(crs, DefaultGeographicCRS.WGS84)) {
+            return extent;
+        }
+
+        try {
+            return extent.transform(crs, true);
+        } catch (TransformException e) {
+            LOGGER.log(Level.FINER, e.getMessage(), e);
+        } catch (FactoryException e) {
+            LOGGER.log(Level.FINER, e.getMessage(), e);
+        }
+        return null;
+    }
+
+    // selects the number(1 based) of a divisions x divisions grid of the cell
+    private static boolean subdivide(double[] cell, String number, int divisions) {
+        final int index = Integer.parseInt(number) - 1;
+        if (index < 0 || index >= divisions * divisions) {
+            return false;
+        }
+
+        final double size = cell[2] / divisions;
+        cell[0] += (index % divisions) * size;
+        cell[1] -= (index / divisions) * size;
+        cell[2] = size;
+        return true;
+    }
+}
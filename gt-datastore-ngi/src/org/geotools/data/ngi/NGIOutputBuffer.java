@@ -0,0 +1,223 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Reusable output buffer used to write NGI/NDA text. ASCII text and numbers are written straight
+ * into the buffer, only non ASCII strings go through the charset. The buffer is flushed to the
+ * file channel when full.
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGIOutputBuffer {
+
+    static final byte[] NEW_LINE = { '\r', '\n' };
+
+    static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    // 6 fraction digits, as written by the NGI tools
+    static final int SCALE = 6;
+
+    static final double SCALE_FACTOR = 1000000d;
+
+    // largest absolute value formatted through long arithmetic
+    static final double MAX_FAST_VALUE = 1e12;
+
+    private final FileOutputStream stream;
+
+    private final FileChannel channel;
+
+    private final Charset charset;
+
+    private final ByteBuffer buffer;
+
+    private final char[] digits = new char[24];
+
+    public NGIOutputBuffer(File file, Charset charset) throws IOException {
+        this(file, charset, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param append true to write at the end of an existing file
+     */
+    public NGIOutputBuffer(File file, Charset charset, boolean append) throws IOException {
+        this(file, charset, DEFAULT_BUFFER_SIZE, append);
+    }
+
+    public NGIOutputBuffer(File file, Charset charset, int bufferSize) throws IOException {
+        this(file, charset, bufferSize, false);
+    }
+
+    public NGIOutputBuffer(File file, Charset charset, int bufferSize, boolean append)
+            throws IOException {
+        this.stream = new FileOutputStream(file, append);
+        this.channel = stream.getChannel();
+        this.charset = charset;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Returns the number of bytes written, including the buffered bytes
+     */
+    public long position() throws IOException {
+        return channel.position() + buffer.position();
+    }
+
+    public NGIOutputBuffer append(String text) throws IOException {
+        final int length = text.length();
+        for (int index = 0; index < length; index++) {
+            if (text.charAt(index) >= 0x80) {
+                return append(text.getBytes(charset));
+            }
+        }
+
+        ensure(length);
+        for (int index = 0; index < length; index++) {
+            buffer.put((byte) text.charAt(index));
+        }
+        return this;
+    }
+
+    public NGIOutputBuffer append(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.capacity()) {
+            flush();
+            channel.write(ByteBuffer.wrap(bytes));
+            return this;
+        }
+        ensure(bytes.length);
+        buffer.put(bytes);
+        return this;
+    }
+
+    public NGIOutputBuffer append(char ch) throws IOException {
+        ensure(1);
+        buffer.put((byte) ch);
+        return this;
+    }
+
+    public NGIOutputBuffer append(long value) throws IOException {
+        int pos = digits.length;
+        final boolean negative = value < 0;
+        long remain = negative ? -value : value;
+        if (remain < 0) {
+            // Long.MIN_VALUE
+            return append(Long.toString(value));
+        }
+
+        do {
+            digits[--pos] = (char) ('0' + (remain % 10));
+            remain /= 10;
+        } while (remain > 0);
+        if (negative) {
+            digits[--pos] = '-';
+        }
+
+        ensure(digits.length - pos);
+        for (int index = pos; index < digits.length; index++) {
+            buffer.put((byte) digits[index]);
+        }
+        return this;
+    }
+
+    /**
+     * Appends the value with 6 fraction digits: 150609.210000
+     */
+    public NGIOutputBuffer appendFixed(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return append(Double.toString(value));
+        } else if (Math.abs(value) >= MAX_FAST_VALUE) {
+            return append(new BigDecimal(value).setScale(SCALE, BigDecimal.ROUND_HALF_UP)
+                    .toPlainString());
+        }
+
+        long scaled = Math.round(Math.abs(value) * SCALE_FACTOR);
+        if (value < 0 && scaled != 0) {
+            append('-');
+        }
+        append(scaled / (long) SCALE_FACTOR);
+        append('.');
+
+        long fraction = scaled % (long) SCALE_FACTOR;
+        ensure(SCALE);
+        for (int index = SCALE - 1; index >= 0; index--) {
+            digits[index] = (char) ('0' + (fraction % 10));
+            fraction /= 10;
+        }
+        for (int index = 0; index < SCALE; index++) {
+            buffer.put((byte) digits[index]);
+        }
+        return this;
+    }
+
+    public NGIOutputBuffer newLine() throws IOException {
+        ensure(NEW_LINE.length);
+        buffer.put(NEW_LINE);
+        return this;
+    }
+
+    public NGIOutputBuffer appendLine(String text) throws IOException {
+        return append(text).newLine();
+    }
+
+    /**
+     * Copies count bytes of the file channel starting at position
+     */
+    public void transferFrom(FileChannel source, long position, long count) throws IOException {
+        flush();
+        final long end = position + count;
+        while (position < end) {
+            long transferred = source.transferTo(position, end - position, channel);
+            if (transferred <= 0) {
+                throw new IOException("Unexpected end of file while copying NGI data");
+            }
+            position += transferred;
+        }
+    }
+
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            stream.close();
+        }
+    }
+
+    private void ensure(int length) throws IOException {
+        if (buffer.remaining() < length) {
+            flush();
+        }
+    }
+}
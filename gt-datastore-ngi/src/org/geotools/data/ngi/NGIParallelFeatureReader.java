@@ -0,0 +1,208 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * NGI FeatureReader which parses the records of a layer in chunks on a thread pool. Each worker
+ * uses its own NGIReader seeking the records through the record index, the features are returned
+ * in record order with the same feature ids as the sequential reader.
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGIParallelFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+    protected static final Logger LOGGER = Logging.getLogger(NGIParallelFeatureReader.class);
+
+    static final int CHUNK_SIZE = 1024;
+
+    private final NGIDataStore dataStore;
+
+    private final NGILayerInfo layer;
+
+    private final SimpleFeatureType featureType;
+
+    private final Envelope filterEnvelope;
+
+    private final NGIRecordIndex records;
+
+    // record positions to read, null reads all records
+    private final int[] selection;
+
+    private final int recordCount;
+
+    private final int maxPending;
+
+    private final ExecutorService executor;
+
+    // chunks in record order
+    private final LinkedList<Future<List<SimpleFeature>>> pending;
+
+    // idle readers of the workers
+    private final List<NGIReader> readers = new ArrayList<NGIReader>();
+
+    private int nextChunk = 0;
+
+    private Iterator<SimpleFeature> current;
+
+    private volatile boolean closed = false;
+
+    public NGIParallelFeatureReader(NGIDataStore dataStore, NGILayerInfo layer,
+            SimpleFeatureType featureType, Envelope filterEnvelope, NGIRecordIndex records,
+            int[] selection, int threads) {
+        this.dataStore = dataStore;
+        this.layer = layer;
+        this.featureType = featureType;
+        this.filterEnvelope = filterEnvelope;
+        this.records = records;
+        this.selection = selection;
+        this.recordCount = selection == null ? records.size() : selection.length;
+
+        // keeps the workers busy while bounding the features held in memory
+        this.maxPending = threads * 2;
+        this.pending = new LinkedList<Future<List<SimpleFeature>>>();
+        this.executor = NGIExecutors.newExecutor(threads);
+    }
+
+    @Override
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        if (closed) {
+            return false;
+        }
+
+        while (current == null || !current.hasNext()) {
+            submitChunks();
+            if (pending.isEmpty()) {
+                return false;
+            }
+            current = NGIExecutors.get(pending.removeFirst()).iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public SimpleFeature next() throws IOException, IllegalArgumentException,
+            NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more features: " + featureType.getTypeName());
+        }
+        return current.next();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        for (Future<List<SimpleFeature>> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+        executor.shutdownNow();
+
+        synchronized (readers) {
+            for (NGIReader reader : readers) {
+                reader.close();
+            }
+            readers.clear();
+        }
+    }
+
+    private void submitChunks() {
+        final int chunks = (recordCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        while (pending.size() < maxPending && nextChunk < chunks) {
+            final int start = nextChunk * CHUNK_SIZE;
+            final int end = Math.min(start + CHUNK_SIZE, recordCount);
+            nextChunk++;
+
+            final int[] chunk = new int[end - start];
+            for (int index = 0; index < chunk.length; index++) {
+                chunk[index] = selection == null ? start + index : selection[start + index];
+            }
+
+            pending.add(executor.submit(new Callable<List<SimpleFeature>>() {
+                @Override
+                public List<SimpleFeature> call() throws Exception {
+                    return readChunk(chunk);
+                }
+            }));
+        }
+    }
+
+    private List<SimpleFeature> readChunk(int[] chunk) throws IOException {
+        NGIReader reader = acquireReader();
+        try {
+            List<SimpleFeature> features = new ArrayList<SimpleFeature>(chunk.length);
+            reader.setRecords(records, chunk);
+            while (reader.hasNext()) {
+                features.add(reader.next());
+            }
+            return features;
+        } finally {
+            releaseReader(reader);
+        }
+    }
+
+    private NGIReader acquireReader() throws IOException {
+        synchronized (readers) {
+            if (!readers.isEmpty()) {
+                return readers.remove(readers.size() - 1);
+            }
+        }
+
+        NGIReader reader = dataStore.createReader();
+        reader.setLayer(layer, featureType);
+        reader.setFilterEnvelope(filterEnvelope);
+        return reader;
+    }
+
+    private void releaseReader(NGIReader reader) {
+        synchronized (readers) {
+            if (!closed) {
+                readers.add(reader);
+                return;
+            }
+        }
+        reader.close();
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * NGI FeatureReader which parses the upcoming features on a background thread into a bounded
+ * buffer, so that parsing overlaps with the consumer.
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGIReadAheadFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+    protected static final Logger LOGGER = Logging.getLogger(NGIReadAheadFeatureReader.class);
+
+    // marks the end of the features
+    private static final Object END = new Object();
+
+    private final FeatureReader<SimpleFeatureType, SimpleFeature> delegate;
+
+    private final SimpleFeatureType featureType;
+
+    private final BlockingQueue<Object> buffer;
+
+    private final ExecutorService executor;
+
+    private final Future<?> producer;
+
+    private Object next;
+
+    private volatile boolean closed = false;
+
+    // guarded by this, the delegate is closed by the producer once started
+    private boolean started = false;
+
+    public NGIReadAheadFeatureReader(FeatureReader<SimpleFeatureType, SimpleFeature> delegate,
+            int bufferSize) {
+        this.delegate = delegate;
+        this.featureType = delegate.getFeatureType();
+        this.buffer = new ArrayBlockingQueue<Object>(Math.max(1, bufferSize));
+        this.executor = NGIExecutors.newExecutor(1);
+        this.producer = executor.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                produce();
+                return null;
+            }
+        });
+    }
+
+    private void produce() throws InterruptedException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            started = true;
+        }
+
+        try {
+            while (!closed && delegate.hasNext()) {
+                buffer.put(delegate.next());
+            }
+            buffer.put(END);
+        } catch (InterruptedException e) {
+            // cancelled by close()
+            throw e;
+        } catch (Throwable e) {
+            // handed over to the consumer
+            buffer.put(e);
+        } finally {
+            closeDelegate();
+        }
+    }
+
+    private void closeDelegate() {
+        try {
+            delegate.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINER, e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        if (closed) {
+            return false;
+        }
+
+        if (next == null) {
+            try {
+                next = buffer.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading NGI features");
+            }
+        }
+
+        if (next instanceof Throwable) {
+            Throwable cause = (Throwable) next;
+            next = END;
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            IOException ioe = new IOException(cause.getMessage());
+            ioe.initCause(cause);
+            throw ioe;
+        }
+        return next != END;
+    }
+
+    @Override
+    public SimpleFeature next() throws IOException, IllegalArgumentException,
+            NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more features: " + featureType.getTypeName());
+        }
+        SimpleFeature feature = (SimpleFeature) next;
+        next = null;
+        return feature;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!started) {
+                closeDelegate();
+            }
+        }
+
+        // interrupts a producer blocked on the full buffer, the producer closes the delegate
+        producer.cancel(true);
+        executor.shutdownNow();
+        buffer.clear();
+        next = END;
+    }
+}
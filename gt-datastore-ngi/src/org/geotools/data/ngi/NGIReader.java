@@ -16,33 +16,31 @@
  */
 package org.geotools.data.ngi;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.apache.commons.io.IOUtils;
 import org.geotools.factory.GeoTools;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.geometry.jts.JTSFactoryFinder;
-import org.geotools.util.Converters;
 import org.geotools.util.logging.Logging;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
-import org.opengis.feature.type.AttributeDescriptor;
-import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
-import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.CoordinateSequenceFactory;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.LinearRing;
 import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequenceFactory;
 
 /**
  * NGI Reader
@@ -63,179 +61,321 @@ public class NGIReader extends AbstractNGIReader {
 
     boolean hasNext = false;
 
-    BufferedReader ngiReader = null;
+    boolean hasAttributes = false;
 
-    BufferedReader ndaReader = null;
+    boolean readGeometry = true;
 
-    GeometryFactory gf = JTSFactoryFinder.getGeometryFactory(GeoTools.getDefaultHints());
+    // NDA record decoder of the schema
+    NGIAttributeDecoder decoder;
+
+    NGIScanner ngiReader = null;
+
+    NGIScanner ndaReader = null;
+
+    CoordinateSequenceFactory csFactory;
+
+    GeometryFactory gf;
 
     SimpleFeatureBuilder fb;
 
     int featureID = 0;
 
+    SimpleFeature nextFeature;
+
+    // records whose envelope does not intersect the filter envelope are skipped
+    Envelope filterEnvelope;
+
+    // selected records to read, null reads the layer sequentially
+    NGIRecordIndex records;
+
+    int[] selection;
+
+    int selectionIndex = 0;
+
+    // envelope of the record being parsed
+    final Envelope recordEnvelope = new Envelope();
+
+    // x0, y0, x1, y1...
+    double[] ordinates = new double[512];
+
+    // parsed geometry of the record: type, part and point counts, see parseGeometry
+    int[] shape = new int[64];
+
+    int shapeSize = 0;
+
+    int pointCount = 0;
+
+    int shapeIndex = 0;
+
+    int pointIndex = 0;
+
     public NGIReader(File ngiFile, File ndaFile, Charset charset) throws IOException {
-        this.ngiReader = new BufferedReader(new InputStreamReader(new FileInputStream(ngiFile),
-                charset));
+        this.setCoordinateSequenceFactory(PackedCoordinateSequenceFactory.DOUBLE_FACTORY);
+        this.ngiReader = new NGIScanner(ngiFile, charset);
         if (ndaFile.exists()) {
-            this.ndaReader = new BufferedReader(new InputStreamReader(new FileInputStream(ndaFile),
-                    charset));
+            this.ndaReader = new NGIScanner(ndaFile, charset);
         }
     }
 
     public void close() {
-        IOUtils.closeQuietly(ngiReader);
-        IOUtils.closeQuietly(ndaReader);
+        ngiReader.close();
+        if (ndaReader != null) {
+            ndaReader.close();
+        }
     }
 
     public SimpleFeatureType getSchema() {
         return schema;
     }
 
+    public CoordinateSequenceFactory getCoordinateSequenceFactory() {
+        return csFactory;
+    }
+
+    /**
+     * Sets the CoordinateSequenceFactory used to build geometries, the default is
+     * {@link PackedCoordinateSequenceFactory#DOUBLE_FACTORY}.
+     */
+    public void setCoordinateSequenceFactory(CoordinateSequenceFactory csFactory) {
+        GeometryFactory defaultFactory = JTSFactoryFinder.getGeometryFactory(GeoTools
+                .getDefaultHints());
+        this.csFactory = csFactory;
+        this.gf = new GeometryFactory(defaultFactory.getPrecisionModel(),
+                defaultFactory.getSRID(), csFactory);
+    }
+
+    /**
+     * Sets the layer to read, the layer is located by scanning the files from the start.
+     */
     public void setSchema(SimpleFeatureType schema) {
+        initSchema(schema, schema, new NGIValueDictionary());
+
+        hasNext = seekLayer(ngiReader, schema.getTypeName()) != null && nextRecord(ngiReader);
+        hasAttributes = ndaReader != null && !decoder.isEmpty()
+                && seekLayer(ndaReader, schema.getTypeName()) != null;
+        if (hasAttributes) {
+            nextRecord(ndaReader);
+        }
+    }
+
+    /**
+     * Sets the layer to read, the readers jump straight to the first record of the layer.
+     */
+    public void setLayer(NGILayerInfo layer) {
+        setLayer(layer, layer.getSchema());
+    }
+
+    /**
+     * Sets the layer to read with a subset of its attributes. The geometry and the NDA columns
+     * not in featureType are skipped without being decoded.
+     * 
+     * @param featureType sub type of the layer schema
+     */
+    public void setLayer(NGILayerInfo layer, SimpleFeatureType featureType) {
+        initSchema(featureType, layer.getSchema(), layer.getDictionary());
+
+        try {
+            hasNext = seekRecords(ngiReader, layer.getNgiRecordOffset());
+            hasAttributes = ndaReader != null && !decoder.isEmpty() && layer.hasAttributes();
+            if (hasAttributes) {
+                seekRecords(ndaReader, layer.getNdaRecordOffset());
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e.getMessage(), e);
+            hasNext = false;
+        }
+    }
+
+    public Envelope getFilterEnvelope() {
+        return filterEnvelope;
+    }
+
+    /**
+     * Sets the envelope records must intersect, records outside of it are skipped before the
+     * feature and its attributes are built. null reads all records.
+     */
+    public void setFilterEnvelope(Envelope filterEnvelope) {
+        this.filterEnvelope = filterEnvelope;
+    }
+
+    /**
+     * Restricts the reader to the given records of the current layer. The readers seek to each
+     * record using the offsets of the record index.
+     * 
+     * @param selection record positions in ascending order
+     */
+    public void setRecords(NGIRecordIndex records, int[] selection) {
+        this.records = records;
+        this.selection = selection;
+        this.selectionIndex = 0;
+        this.nextFeature = null;
+    }
+
+    private void initSchema(SimpleFeatureType schema, SimpleFeatureType layerSchema,
+            NGIValueDictionary dictionary) {
         this.schema = schema;
-        this.crs = schema.getCoordinateReferenceSystem();
-        this.geomBinding = schema.getGeometryDescriptor().getType().getBinding();
+        this.crs = layerSchema.getCoordinateReferenceSystem();
+        this.readGeometry = schema.getGeometryDescriptor() != null;
+        this.geomBinding = readGeometry ? schema.getGeometryDescriptor().getType().getBinding()
+                : null;
         this.fb = new SimpleFeatureBuilder(schema);
         this.featureID = 0;
+        this.nextFeature = null;
 
-        seekLayer(ngiReader, schema.getTypeName());
-        hasNext = nextRecord(ngiReader);
-        if (ndaReader != null) {
-            seekLayer(ndaReader, schema.getTypeName());
-            nextRecord(ndaReader);
+        // the NDA columns follow the non geometry attributes of the layer schema
+        this.decoder = new NGIAttributeDecoder(schema, layerSchema, dictionary);
+    }
+
+    private boolean seekRecords(NGIScanner reader, long recordOffset) throws IOException {
+        if (recordOffset == -1) {
+            // empty layer
+            return false;
         }
+        reader.position(recordOffset);
+        return nextRecord(reader);
     }
 
     public boolean hasNext() {
-        return hasNext;
+        if (nextFeature == null) {
+            nextFeature = readFeature();
+        }
+        return nextFeature != null;
     }
 
     public SimpleFeature next() {
-        SimpleFeature feature = fb.buildFeature(schema.getTypeName() + "." + ++featureID);
-        Geometry geometry = getNextGeometry(ngiReader);
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more features: " + schema.getTypeName());
+        }
+        SimpleFeature feature = nextFeature;
+        nextFeature = null;
+        return feature;
+    }
 
-        if (geometry != null) {
-            geometry.setUserData(crs);
-            feature.setDefaultGeometry(geometry);
+    private SimpleFeature readFeature() {
+        if (selection != null) {
+            return readSelectedFeature();
         }
 
-        hasNext = nextRecord(ngiReader);
-        if (ndaReader != null) {
-            try {
-                // 7371, "영광읍", "행정지명", "법정명", "1000035610069H00410000000000073716"
-                String[] values = ndaReader.readLine().split(",");
-                int addIndex = 0;
-                for (int index = 0; index < schema.getAttributeCount(); index++) {
-                    AttributeDescriptor desc = schema.getDescriptor(index);
-                    if (desc instanceof GeometryDescriptor) {
-                        continue;
-                    }
-
-                    Class<?> binding = desc.getType().getBinding();
-                    if (binding.isAssignableFrom(String.class)) {
-                        String value = (String) Converters.convert(values[addIndex++], binding);
-                        if (value != null && !value.isEmpty()) {
-                            value = value.trim();
-                            value = value.substring(1, value.length() - 1);
-                        }
-                        feature.setAttribute(desc.getLocalName(), value);
-                    } else {
-                        Object value = Converters.convert(values[addIndex++], binding);
-                        feature.setAttribute(desc.getLocalName(), value);
-                    }
+        while (hasNext) {
+            featureID++;
+            recordEnvelope.setToNull();
+            Geometry geometry = null;
+            boolean parsed = false;
+            if (readGeometry && filterEnvelope != null) {
+                // the geometry is built after the envelope test
+                parsed = parseGeometry(ngiReader);
+            } else if (readGeometry) {
+                geometry = getNextGeometry(ngiReader);
+            } else if (filterEnvelope != null) {
+                // only the envelope is needed to test the record
+                readEnvelope(ngiReader);
+            }
+            // skips the coordinates when the geometry is not requested
+            hasNext = nextRecord(ngiReader);
+
+            if (filterEnvelope != null && !filterEnvelope.intersects(recordEnvelope)) {
+                // skip the attribute record without decoding it
+                if (hasAttributes) {
+                    nextRecord(ndaReader);
                 }
+                continue;
+            }
+
+            if (parsed) {
+                geometry = buildGeometry();
+            }
+
+            SimpleFeature feature = fb.buildFeature(schema.getTypeName() + "." + featureID);
+            if (geometry != null && readGeometry) {
+                geometry.setUserData(crs);
+                feature.setDefaultGeometry(geometry);
+            }
+
+            if (hasAttributes) {
+                readAttributes(feature);
+                nextRecord(ndaReader);
+            }
+            return feature;
+        }
+        return null;
+    }
+
+    private SimpleFeature readSelectedFeature() {
+        while (selectionIndex < selection.length) {
+            final int record = selection[selectionIndex++];
+            if (filterEnvelope != null && !records.intersects(record, filterEnvelope)) {
+                continue;
+            }
+
+            try {
+                ngiReader.position(records.getNgiOffset(record));
+                ngiReader.nextLine(); // $RECORD
             } catch (IOException e) {
                 LOGGER.log(Level.WARNING, e.getMessage(), e);
+                continue;
             }
 
-            nextRecord(ndaReader);
+            SimpleFeature feature = fb.buildFeature(schema.getTypeName() + "." + (record + 1));
+            if (readGeometry) {
+                Geometry geometry = getNextGeometry(ngiReader);
+                if (geometry != null) {
+                    geometry.setUserData(crs);
+                    feature.setDefaultGeometry(geometry);
+                }
+            }
+
+            final long ndaOffset = records.getNdaOffset(record);
+            if (hasAttributes && ndaOffset != -1) {
+                try {
+                    ndaReader.position(ndaOffset);
+                    ndaReader.nextLine(); // $RECORD
+                    readAttributes(feature);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, e.getMessage(), e);
+                }
+            }
+            return feature;
         }
-        return feature;
+        return null;
     }
 
-    private Geometry getNextGeometry(BufferedReader reader) {
+    private void readAttributes(SimpleFeature feature) {
         try {
-            String gtype = reader.readLine().toUpperCase().trim(); // LINESTRING
-            if (gtype.startsWith("POINT")) {
-                return gf.createPoint(parseCoordinate(reader.readLine()));
-            } else if (gtype.startsWith("TEXT")) {
-                return gf.createPoint(parseCoordinate(reader.readLine()));
-            } else if (gtype.startsWith("LINE")) {
-                int numofPoints = parseInteger(reader.readLine());
-                Coordinate[] coordinates = new Coordinate[numofPoints];
-                for (int index = 0; index < numofPoints; index++) {
-                    coordinates[index] = parseCoordinate(reader.readLine());
-                }
-                return gf.createLineString(coordinates);
-            } else if (gtype.startsWith("POLYGON")) {
-                int numofRing = parseInteger(reader.readLine().replace("NUMPARTS", ""));
-                LinearRing shell = null;
-                LinearRing[] holes = numofRing > 1 ? new LinearRing[numofRing - 1] : null;
-                for (int ringIndex = 0; ringIndex < numofRing; ringIndex++) {
-                    int numofPoints = parseInteger(reader.readLine());
-                    // =========================================================
-                    // NGI 포맷에서는 폴리곤인 경우에도 시작점과 끝점이 다르다.
-                    Coordinate[] coordinates = new Coordinate[numofPoints + 1];
-                    // =========================================================
-                    for (int index = 0; index < numofPoints; index++) {
-                        coordinates[index] = parseCoordinate(reader.readLine());
-                    }
-                    coordinates[numofPoints] = coordinates[0];
-
-                    if (ringIndex == 0) {
-                        shell = gf.createLinearRing(coordinates);
-                    } else {
-                        holes[ringIndex - 1] = gf.createLinearRing(coordinates);
-                    }
-                }
+            ndaReader.nextLine();
+            decoder.decode(ndaReader, feature);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e.getMessage(), e);
+        }
+    }
 
-                return gf.createPolygon(shell, holes);
-            } else if (gtype.startsWith("MULTIPOINT")) {
-                int numofPoints = parseInteger(reader.readLine());
-                Coordinate[] coordinates = new Coordinate[numofPoints];
-                for (int index = 0; index < numofPoints; index++) {
-                    coordinates[index] = parseCoordinate(reader.readLine());
-                }
-                return gf.createMultiPoint(coordinates);
-            } else if (gtype.startsWith("MULTILINE")) {
-                int numofParts = parseInteger(reader.readLine().replace("NUMPARTS", ""));
+    private Geometry getNextGeometry(NGIScanner reader) {
+        try {
+            reader.nextLine(); // LINESTRING
+            if (reader.lineStartsWith("POINT")) {
+                return gf.createPoint(readSequence(reader, 1, false));
+            } else if (reader.lineStartsWith("TEXT")) {
+                return gf.createPoint(readSequence(reader, 1, false));
+            } else if (reader.lineStartsWith("LINE")) {
+                return gf.createLineString(readSequence(reader, readInt(reader), false));
+            } else if (reader.lineStartsWith("POLYGON")) {
+                return readPolygon(reader);
+            } else if (reader.lineStartsWith("MULTIPOINT")) {
+                return gf.createMultiPoint(readSequence(reader, readInt(reader), false));
+            } else if (reader.lineStartsWith("MULTILINE")) {
+                int numofParts = readInt(reader);
                 LineString[] lineStrings = new LineString[numofParts];
                 for (int partIndex = 0; partIndex < numofParts; partIndex++) {
-                    int numofPoints = parseInteger(reader.readLine());
-                    Coordinate[] coordinates = new Coordinate[numofPoints];
-                    for (int index = 0; index < numofPoints; index++) {
-                        coordinates[index] = parseCoordinate(reader.readLine());
-                    }
-                    lineStrings[partIndex] = gf.createLineString(coordinates);
+                    int numofPoints = readInt(reader);
+                    lineStrings[partIndex] = gf.createLineString(readSequence(reader,
+                            numofPoints, false));
                 }
                 return gf.createMultiLineString(lineStrings);
-            } else if (gtype.startsWith("MULTIPOLY")) {
-                int numofParts = parseInteger(reader.readLine().replace("NUMPARTS", ""));
+            } else if (reader.lineStartsWith("MULTIPOLY")) {
+                int numofParts = readInt(reader);
                 Polygon[] polygons = new Polygon[numofParts];
                 for (int partIndex = 0; partIndex < numofParts; partIndex++) {
-                    int numofRing = parseInteger(reader.readLine().replace("NUMPARTS", ""));
-                    LinearRing shell = null;
-                    LinearRing[] holes = numofRing > 1 ? new LinearRing[numofRing - 1] : null;
-                    for (int ringIndex = 0; ringIndex < numofRing; ringIndex++) {
-                        int numofPoints = parseInteger(reader.readLine());
-                        // =========================================================
-                        // NGI 포맷에서는 폴리곤인 경우에도 시작점과 끝점이 다르다.
-                        Coordinate[] coordinates = new Coordinate[numofPoints + 1];
-                        // =========================================================
-                        for (int index = 0; index < numofPoints; index++) {
-                            coordinates[index] = parseCoordinate(reader.readLine());
-                        }
-                        coordinates[numofPoints] = coordinates[0];
-
-                        if (ringIndex == 0) {
-                            shell = gf.createLinearRing(coordinates);
-                        } else {
-                            holes[ringIndex - 1] = gf.createLinearRing(coordinates);
-                        }
-                    }
-                    polygons[partIndex] = gf.createPolygon(shell, holes);
+                    polygons[partIndex] = readPolygon(reader);
                 }
-
                 return gf.createMultiPolygon(polygons);
             }
         } catch (IOException e) {
@@ -245,18 +385,264 @@ public class NGIReader extends AbstractNGIReader {
         return null;
     }
 
-    private boolean nextRecord(BufferedReader reader) {
+    /**
+     * Parses the next geometry into the shape(type, part and point counts) and ordinate buffers
+     * and expands the record envelope, the geometry is created by {@link #buildGeometry()}.
+     * <p>
+     * shape: POINT 1 | LINESTRING n | POLYGON rings n... | MULTIPOINT n | MULTILINESTRING parts
+     * n... | MULTIPOLYGON parts (rings n...)...
+     * </p>
+     *
+     * @return false if the record has no geometry
+     */
+    private boolean parseGeometry(NGIScanner reader) {
+        shapeSize = 0;
+        pointCount = 0;
+        try {
+            reader.nextLine(); // LINESTRING
+            if (reader.lineStartsWith("POINT") || reader.lineStartsWith("TEXT")) {
+                addShape(NGIColumnarFile.POINT);
+                parsePoints(reader, 1);
+            } else if (reader.lineStartsWith("LINE")) {
+                addShape(NGIColumnarFile.LINESTRING);
+                parsePoints(reader, readInt(reader));
+            } else if (reader.lineStartsWith("POLYGON")) {
+                addShape(NGIColumnarFile.POLYGON);
+                parsePolygon(reader);
+            } else if (reader.lineStartsWith("MULTIPOINT")) {
+                addShape(NGIColumnarFile.MULTIPOINT);
+                parsePoints(reader, readInt(reader));
+            } else if (reader.lineStartsWith("MULTILINE")) {
+                addShape(NGIColumnarFile.MULTILINESTRING);
+                final int numofParts = readInt(reader);
+                addShape(numofParts);
+                for (int partIndex = 0; partIndex < numofParts; partIndex++) {
+                    parsePoints(reader, readInt(reader));
+                }
+            } else if (reader.lineStartsWith("MULTIPOLY")) {
+                addShape(NGIColumnarFile.MULTIPOLYGON);
+                final int numofParts = readInt(reader);
+                addShape(numofParts);
+                for (int partIndex = 0; partIndex < numofParts; partIndex++) {
+                    parsePolygon(reader);
+                }
+            } else {
+                return false;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINER, e.getMessage(), e);
+            return false;
+        }
+
+        expandRecordEnvelope(ordinates, pointCount);
+        return true;
+    }
+
+    private void parsePolygon(NGIScanner reader) throws IOException {
+        final int numofRing = readInt(reader);
+        addShape(numofRing);
+        for (int ringIndex = 0; ringIndex < numofRing; ringIndex++) {
+            parsePoints(reader, readInt(reader));
+        }
+    }
+
+    private void parsePoints(NGIScanner reader, int numofPoints) throws IOException {
+        addShape(numofPoints);
+        ordinates = readCoordinates(reader, ordinates, pointCount, numofPoints);
+        pointCount += numofPoints;
+    }
+
+    private void addShape(int value) {
+        if (shapeSize == shape.length) {
+            shape = Arrays.copyOf(shape, shape.length * 2);
+        }
+        shape[shapeSize++] = value;
+    }
+
+    /**
+     * Creates the geometry parsed by {@link #parseGeometry(NGIScanner)}
+     */
+    private Geometry buildGeometry() {
+        shapeIndex = 0;
+        pointIndex = 0;
+        switch (shape[shapeIndex++]) {
+        case NGIColumnarFile.POINT:
+            return gf.createPoint(buildSequence(false));
+        case NGIColumnarFile.LINESTRING:
+            return gf.createLineString(buildSequence(false));
+        case NGIColumnarFile.POLYGON:
+            return buildPolygon();
+        case NGIColumnarFile.MULTIPOINT:
+            return gf.createMultiPoint(buildSequence(false));
+        case NGIColumnarFile.MULTILINESTRING:
+            LineString[] lineStrings = new LineString[shape[shapeIndex++]];
+            for (int partIndex = 0; partIndex < lineStrings.length; partIndex++) {
+                lineStrings[partIndex] = gf.createLineString(buildSequence(false));
+            }
+            return gf.createMultiLineString(lineStrings);
+        case NGIColumnarFile.MULTIPOLYGON:
+            Polygon[] polygons = new Polygon[shape[shapeIndex++]];
+            for (int partIndex = 0; partIndex < polygons.length; partIndex++) {
+                polygons[partIndex] = buildPolygon();
+            }
+            return gf.createMultiPolygon(polygons);
+        default:
+            return null;
+        }
+    }
+
+    private Polygon buildPolygon() {
+        final int numofRing = shape[shapeIndex++];
+        LinearRing shell = null;
+        LinearRing[] holes = numofRing > 1 ? new LinearRing[numofRing - 1] : null;
+        for (int ringIndex = 0; ringIndex < numofRing; ringIndex++) {
+            LinearRing ring = gf.createLinearRing(buildSequence(true));
+            if (ringIndex == 0) {
+                shell = ring;
+            } else {
+                holes[ringIndex - 1] = ring;
+            }
+        }
+        return gf.createPolygon(shell, holes);
+    }
+
+    private CoordinateSequence buildSequence(boolean closed) {
+        final int numofPoints = shape[shapeIndex++];
+        final int start = pointIndex * 2;
+        pointIndex += numofPoints;
+        final int size = closed ? numofPoints + 1 : numofPoints;
+
+        if (csFactory instanceof PackedCoordinateSequenceFactory && isPackedDouble()) {
+            double[] packed = new double[size * 2];
+            System.arraycopy(ordinates, start, packed, 0, numofPoints * 2);
+            if (closed) {
+                packed[numofPoints * 2] = packed[0];
+                packed[numofPoints * 2 + 1] = packed[1];
+            }
+            return ((PackedCoordinateSequenceFactory) csFactory).create(packed, 2);
+        }
+
+        CoordinateSequence sequence = csFactory.create(size, 2);
+        for (int index = 0; index < size; index++) {
+            final int pos = start + (index < numofPoints ? index * 2 : 0);
+            sequence.setOrdinate(index, CoordinateSequence.X, ordinates[pos]);
+            sequence.setOrdinate(index, CoordinateSequence.Y, ordinates[pos + 1]);
+        }
+        return sequence;
+    }
+
+    /**
+     * Expands the record envelope with the coordinates of the next geometry without building it
+     */
+    private void readEnvelope(NGIScanner reader) {
+        try {
+            reader.nextLine(); // LINESTRING
+            if (reader.lineStartsWith("POINT") || reader.lineStartsWith("TEXT")) {
+                readEnvelope(reader, 1);
+            } else if (reader.lineStartsWith("LINE")) {
+                readEnvelope(reader, readInt(reader));
+            } else if (reader.lineStartsWith("POLYGON")) {
+                readPolygonEnvelope(reader);
+            } else if (reader.lineStartsWith("MULTIPOINT")) {
+                readEnvelope(reader, readInt(reader));
+            } else if (reader.lineStartsWith("MULTILINE")) {
+                int numofParts = readInt(reader);
+                for (int partIndex = 0; partIndex < numofParts; partIndex++) {
+                    readEnvelope(reader, readInt(reader));
+                }
+            } else if (reader.lineStartsWith("MULTIPOLY")) {
+                int numofParts = readInt(reader);
+                for (int partIndex = 0; partIndex < numofParts; partIndex++) {
+                    readPolygonEnvelope(reader);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINER, e.getMessage(), e);
+        }
+    }
+
+    private void readPolygonEnvelope(NGIScanner reader) throws IOException {
+        int numofRing = readInt(reader);
+        for (int ringIndex = 0; ringIndex < numofRing; ringIndex++) {
+            readEnvelope(reader, readInt(reader));
+        }
+    }
+
+    private void readEnvelope(NGIScanner reader, int numofPoints) throws IOException {
+        ordinates = readCoordinates(reader, ordinates, numofPoints);
+        expandRecordEnvelope(ordinates, numofPoints);
+    }
+
+    private Polygon readPolygon(NGIScanner reader) throws IOException {
+        int numofRing = readInt(reader);
+        LinearRing shell = null;
+        LinearRing[] holes = numofRing > 1 ? new LinearRing[numofRing - 1] : null;
+        for (int ringIndex = 0; ringIndex < numofRing; ringIndex++) {
+            // NGI 포맷에서는 폴리곤인 경우에도 시작점과 끝점이 다르다.
+            LinearRing ring = gf.createLinearRing(readSequence(reader, readInt(reader), true));
+            if (ringIndex == 0) {
+                shell = ring;
+            } else {
+                holes[ringIndex - 1] = ring;
+            }
+        }
+        return gf.createPolygon(shell, holes);
+    }
+
+    /**
+     * Reads numofPoints coordinates into a new CoordinateSequence, closed rings get the first
+     * coordinate appended.
+     */
+    private CoordinateSequence readSequence(NGIScanner reader, int numofPoints, boolean closed)
+            throws IOException {
+        final int size = closed ? numofPoints + 1 : numofPoints;
+
+        if (csFactory instanceof PackedCoordinateSequenceFactory
+                && isPackedDouble()) {
+            // parse straight into the packed array of the sequence
+            double[] packed = readCoordinates(reader, new double[size * 2], numofPoints);
+            expandRecordEnvelope(packed, numofPoints);
+            if (closed) {
+                packed[numofPoints * 2] = packed[0];
+                packed[numofPoints * 2 + 1] = packed[1];
+            }
+            return ((PackedCoordinateSequenceFactory) csFactory).create(packed, 2);
+        }
+
+        ordinates = readCoordinates(reader, ordinates, numofPoints);
+        expandRecordEnvelope(ordinates, numofPoints);
+        CoordinateSequence sequence = csFactory.create(size, 2);
+        for (int index = 0; index < size; index++) {
+            final int pos = index < numofPoints ? index * 2 : 0;
+            sequence.setOrdinate(index, CoordinateSequence.X, ordinates[pos]);
+            sequence.setOrdinate(index, CoordinateSequence.Y, ordinates[pos + 1]);
+        }
+        return sequence;
+    }
+
+    private void expandRecordEnvelope(double[] ordinates, int numofPoints) {
+        if (filterEnvelope == null) {
+            return;
+        }
+        for (int index = 0; index < numofPoints; index++) {
+            recordEnvelope.expandToInclude(ordinates[index * 2], ordinates[index * 2 + 1]);
+        }
+    }
+
+    private boolean isPackedDouble() {
+        return ((PackedCoordinateSequenceFactory) csFactory).getType() == PackedCoordinateSequenceFactory.DOUBLE;
+    }
+
+    private boolean nextRecord(NGIScanner reader) {
         try {
-            String line = reader.readLine();
-            while (line != null) {
-                if (line.toUpperCase().indexOf("$RECORD") != -1) {
+            while (reader.nextLine()) {
+                if (reader.lineContains("$RECORD")) {
                     return true;
                 }
 
-                if (line.toUpperCase().indexOf("<LAYER_END>") != -1) {
+                if (reader.lineContains("<LAYER_END>")) {
                     return false;
                 }
-                line = reader.readLine();
             }
         } catch (IOException e) {
             LOGGER.log(Level.FINER, e.getMessage(), e);
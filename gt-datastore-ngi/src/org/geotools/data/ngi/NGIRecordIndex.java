@@ -0,0 +1,158 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Per-record index of a NGI layer: byte offsets of each $RECORD in the NGI and NDA files and the
+ * envelope of each record. Records are addressed by their zero based position in the layer.
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGIRecordIndex {
+
+    private int size = 0;
+
+    private long[] ngiOffsets;
+
+    private long[] ndaOffsets;
+
+    // minx, miny, maxx, maxy
+    private double[] envelopes;
+
+    public NGIRecordIndex() {
+        this(16);
+    }
+
+    public NGIRecordIndex(int capacity) {
+        capacity = Math.max(1, capacity);
+        this.ngiOffsets = new long[capacity];
+        this.ndaOffsets = new long[capacity];
+        this.envelopes = new double[capacity * 4];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Appends a record with an empty envelope
+     *
+     * @return index of the new record
+     */
+    public int add(long ngiOffset) {
+        if (size == ngiOffsets.length) {
+            grow();
+        }
+        ngiOffsets[size] = ngiOffset;
+        ndaOffsets[size] = -1;
+        envelopes[size * 4] = Double.POSITIVE_INFINITY;
+        envelopes[size * 4 + 1] = Double.POSITIVE_INFINITY;
+        envelopes[size * 4 + 2] = Double.NEGATIVE_INFINITY;
+        envelopes[size * 4 + 3] = Double.NEGATIVE_INFINITY;
+        return size++;
+    }
+
+    public void expandToInclude(int index, double x, double y) {
+        final int pos = index * 4;
+        if (x < envelopes[pos]) {
+            envelopes[pos] = x;
+        }
+        if (y < envelopes[pos + 1]) {
+            envelopes[pos + 1] = y;
+        }
+        if (x > envelopes[pos + 2]) {
+            envelopes[pos + 2] = x;
+        }
+        if (y > envelopes[pos + 3]) {
+            envelopes[pos + 3] = y;
+        }
+    }
+
+    public void setEnvelope(int index, double minX, double minY, double maxX, double maxY) {
+        final int pos = index * 4;
+        envelopes[pos] = minX;
+        envelopes[pos + 1] = minY;
+        envelopes[pos + 2] = maxX;
+        envelopes[pos + 3] = maxY;
+    }
+
+    public long getNgiOffset(int index) {
+        return ngiOffsets[index];
+    }
+
+    public long getNdaOffset(int index) {
+        return ndaOffsets[index];
+    }
+
+    public void setNdaOffset(int index, long ndaOffset) {
+        ndaOffsets[index] = ndaOffset;
+    }
+
+    public double getMinX(int index) {
+        return envelopes[index * 4];
+    }
+
+    public double getMinY(int index) {
+        return envelopes[index * 4 + 1];
+    }
+
+    public double getMaxX(int index) {
+        return envelopes[index * 4 + 2];
+    }
+
+    public double getMaxY(int index) {
+        return envelopes[index * 4 + 3];
+    }
+
+    public boolean isEmpty(int index) {
+        return envelopes[index * 4] > envelopes[index * 4 + 2];
+    }
+
+    public Envelope getEnvelope(int index) {
+        if (isEmpty(index)) {
+            return new Envelope();
+        }
+        return new Envelope(getMinX(index), getMaxX(index), getMinY(index), getMaxY(index));
+    }
+
+    public boolean intersects(int index, Envelope envelope) {
+        final int pos = index * 4;
+        return !(envelope.getMinX() > envelopes[pos + 2] || envelope.getMaxX() < envelopes[pos]
+                || envelope.getMinY() > envelopes[pos + 3] || envelope.getMaxY() < envelopes[pos + 1]);
+    }
+
+    private void grow() {
+        final int capacity = ngiOffsets.length * 2;
+
+        long[] ngi = new long[capacity];
+        System.arraycopy(ngiOffsets, 0, ngi, 0, size);
+        ngiOffsets = ngi;
+
+        long[] nda = new long[capacity];
+        System.arraycopy(ndaOffsets, 0, nda, 0, size);
+        ndaOffsets = nda;
+
+        double[] env = new double[capacity * 4];
+        System.arraycopy(envelopes, 0, env, 0, size * 4);
+        envelopes = env;
+    }
+}
@@ -0,0 +1,704 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.logging.Logger;
+
+import org.geotools.resources.NIOUtilities;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Byte level line scanner and tokenizer for NGI/NDA files.
+ * <p>
+ * Lines are located on the raw bytes and only decoded through the charset on request, so the
+ * scanner always knows the byte offset of the current line. Keywords, integers and NDA fields are
+ * handled directly on the bytes; only attribute strings go through the charset decoder. NGI/NDA
+ * files are written in ASCII compatible charsets(EUC-KR, x-windows-949), so line feeds, quotes
+ * and commas never appear inside a multi-byte character.
+ * </p>
+ * <p>
+ * By default the whole file is memory mapped. Files larger than 2GB are read through a
+ * {@link FileChannel} window instead. Compressed files({@link NGICompressedFile}) are decompressed
+ * while reading, seeking forward skips the decompressed bytes and seeking backward reopens the
+ * stream.
+ * </p>
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGIScanner {
+    protected static final Logger LOGGER = Logging.getLogger(NGIScanner.class);
+
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    // largest mantissa that is exactly representable as a double
+    static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int index = 1; index < POWERS_OF_TEN.length; index++) {
+            POWERS_OF_TEN[index] = POWERS_OF_TEN[index - 1] * 10.0;
+        }
+    }
+
+    private InputStream inputStream;
+
+    private final FileChannel channel;
+
+    // compressed file read by streaming decompression, null for files
+    private final NGICompressedFile compressedFile;
+
+    private final Charset charset;
+
+    // memory mapped file or a window of the file
+    private ByteBuffer buffer;
+
+    private final boolean mapped;
+
+    // decoding buffers
+    private byte[] bytes = new byte[256];
+
+    private char[] chars = new char[256];
+
+    // number parsing position in the current line
+    private int cursor = 0;
+
+    // field bounds of the current line: start, end
+    private int[] fields = new int[64];
+
+    private int fieldCount = 0;
+
+    // file offset of buffer[0]
+    private long bufferOffset = 0;
+
+    private int pos = 0;
+
+    private int limit = 0;
+
+    private boolean eof = false;
+
+    // current line, trimmed
+    private int lineStart = 0;
+
+    private int lineEnd = 0;
+
+    private long lineOffset = -1;
+
+    public NGIScanner(File file, Charset charset) throws IOException {
+        this(file, charset, true);
+    }
+
+    public NGIScanner(File file, Charset charset, boolean memoryMapped) throws IOException {
+        this.charset = charset;
+
+        if (file instanceof NGICompressedFile) {
+            this.compressedFile = (NGICompressedFile) file;
+            this.inputStream = compressedFile.openStream();
+            this.channel = null;
+            this.buffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+            this.mapped = false;
+            return;
+        }
+        this.compressedFile = null;
+
+        FileInputStream fis = new FileInputStream(file);
+        FileChannel fc = fis.getChannel();
+        final long size = fc.size();
+        if (memoryMapped && size <= Integer.MAX_VALUE) {
+            // the mapping stays valid after the channel is closed
+            this.buffer = fc.map(MapMode.READ_ONLY, 0, size);
+            this.mapped = true;
+            this.limit = (int) size;
+            this.eof = true;
+            fc.close();
+            fis.close();
+            this.inputStream = null;
+            this.channel = null;
+        } else {
+            this.buffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+            this.mapped = false;
+            this.inputStream = fis;
+            this.channel = fc;
+        }
+    }
+
+    public boolean isMemoryMapped() {
+        return mapped;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Returns the byte offset of the current line
+     */
+    public long getLineOffset() {
+        return lineOffset;
+    }
+
+    /**
+     * Returns the byte offset of the next line
+     */
+    public long position() {
+        return bufferOffset + pos;
+    }
+
+    /**
+     * Moves to the given byte offset, the next call to {@link #nextLine()} reads the line
+     * starting there.
+     */
+    public void position(long offset) throws IOException {
+        if (offset >= bufferOffset && offset <= bufferOffset + limit) {
+            pos = (int) (offset - bufferOffset);
+        } else if (mapped) {
+            // the mapping holds the whole file
+            throw new IOException("Invalid offset " + offset + ", file size " + limit);
+        } else {
+            if (compressedFile != null) {
+                skipTo(offset);
+            } else {
+                channel.position(offset);
+            }
+            bufferOffset = offset;
+            pos = 0;
+            limit = 0;
+            eof = false;
+        }
+        lineOffset = -1;
+        lineStart = lineEnd = 0;
+    }
+
+    /**
+     * Advances to the next line.
+     *
+     * @return false if the end of file was reached
+     */
+    public boolean nextLine() throws IOException {
+        int scan = pos;
+        while (true) {
+            for (; scan < limit; scan++) {
+                if (buffer.get(scan) == '\n') {
+                    setLine(pos, scan);
+                    pos = scan + 1;
+                    return true;
+                }
+            }
+
+            if (eof) {
+                if (pos < limit) {
+                    setLine(pos, limit);
+                    pos = limit;
+                    return true;
+                }
+                lineOffset = -1;
+                lineStart = lineEnd = 0;
+                return false;
+            }
+
+            final int shift = pos;
+            fill();
+            scan -= shift;
+        }
+    }
+
+    /**
+     * Returns the current line decoded through the charset
+     */
+    public String getLine() {
+        return decode(lineStart, lineEnd);
+    }
+
+    /**
+     * Returns the current line without charset decoding, for keyword and number lines
+     */
+    public String getAsciiLine() {
+        return ascii(lineStart, lineEnd);
+    }
+
+    /**
+     * Parses the first integer of the current line, "NUMPARTS 2" => 2
+     */
+    public int getInt() {
+        int index = lineStart;
+        while (index < lineEnd && !isDigit(buffer.get(index)) && buffer.get(index) != '-') {
+            index++;
+        }
+
+        boolean negative = false;
+        if (index < lineEnd && buffer.get(index) == '-') {
+            negative = true;
+            index++;
+        }
+
+        if (index == lineEnd || !isDigit(buffer.get(index))) {
+            throw new NumberFormatException("No integer in " + getAsciiLine());
+        }
+
+        int value = 0;
+        while (index < lineEnd && isDigit(buffer.get(index))) {
+            value = value * 10 + (buffer.get(index++) - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses the "x y" pair of the current line into ordinates[offset], ordinates[offset + 1]
+     * without allocating.
+     */
+    public void getCoordinate(double[] ordinates, int offset) {
+        cursor = lineStart;
+        ordinates[offset] = nextDouble();
+        ordinates[offset + 1] = nextDouble();
+    }
+
+    /**
+     * Parses the next decimal number of the current line. Plain decimals("-150609.210000") with
+     * up to 15 significant digits are parsed in place, which gives exactly the same result as
+     * {@link Double#parseDouble(String)} as both the mantissa and the power of ten are exact
+     * doubles. Anything else falls back to {@link Double#parseDouble(String)}.
+     */
+    public double nextDouble() {
+        while (cursor < lineEnd && isSeparator(buffer.get(cursor))) {
+            cursor++;
+        }
+
+        final int start = cursor;
+        while (cursor < lineEnd && !isSeparator(buffer.get(cursor))) {
+            cursor++;
+        }
+        return parseDouble(start, cursor);
+    }
+
+    private double parseDouble(final int start, final int end) {
+        int index = start;
+        boolean negative = false;
+        if (index < end) {
+            final byte sign = buffer.get(index);
+            if (sign == '-') {
+                negative = true;
+                index++;
+            } else if (sign == '+') {
+                index++;
+            }
+        }
+
+        long mantissa = 0;
+        int scale = 0;
+        int digits = 0;
+        byte b = 0;
+        while (index < end && isDigit(b = buffer.get(index))) {
+            mantissa = mantissa * 10 + (b - '0');
+            digits++;
+            index++;
+        }
+
+        if (index < end && b == '.') {
+            index++;
+            while (index < end && isDigit(b = buffer.get(index))) {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                scale++;
+                index++;
+            }
+        }
+
+        // exponent or garbage
+        boolean exact = index == end;
+        if (digits == 0 || digits > 18 || mantissa >= MAX_EXACT_MANTISSA
+                || scale >= POWERS_OF_TEN.length) {
+            exact = false;
+        }
+
+        if (!exact) {
+            return Double.parseDouble(ascii(start, end));
+        }
+
+        final double value = scale == 0 ? mantissa : mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Splits the current line into fields, fields are trimmed
+     *
+     * @return number of fields
+     */
+    public int splitLine(char separator) {
+        return splitLine(separator, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Splits the current line, stops after maxFields fields
+     */
+    public int splitLine(char separator, int maxFields) {
+        fieldCount = 0;
+        if (lineEnd == lineStart || maxFields <= 0) {
+            return 0;
+        }
+
+        int start = lineStart;
+        for (int index = lineStart; index <= lineEnd; index++) {
+            if (index == lineEnd || buffer.get(index) == separator) {
+                addField(start, index);
+                if (fieldCount == maxFields) {
+                    break;
+                }
+                start = index + 1;
+            }
+        }
+        return fieldCount;
+    }
+
+    /**
+     * Splits the current NDA line in a single pass, separators within double quotes do not end
+     * the field: 7371, "영광읍", "A,B" => 3 fields. Stops after maxFields fields.
+     */
+    public int splitQuotedLine(char separator, int maxFields) {
+        fieldCount = 0;
+        if (lineEnd == lineStart || maxFields <= 0) {
+            return 0;
+        }
+
+        boolean quoted = false;
+        int start = lineStart;
+        for (int index = lineStart; index < lineEnd; index++) {
+            final byte b = buffer.get(index);
+            if (b == '"') {
+                quoted = !quoted;
+            } else if (b == separator && !quoted) {
+                addField(start, index);
+                if (fieldCount == maxFields) {
+                    return fieldCount;
+                }
+                start = index + 1;
+            }
+        }
+        addField(start, lineEnd);
+        return fieldCount;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    public boolean isEmptyField(int field) {
+        return fields[field * 2] == fields[field * 2 + 1];
+    }
+
+    /**
+     * Returns the string value of the field without the enclosing double quotes. ASCII values
+     * are not decoded through the charset.
+     */
+    public String getStringField(int field) {
+        int start = fields[field * 2];
+        int end = fields[field * 2 + 1];
+        if (end - start > 1 && buffer.get(start) == '"' && buffer.get(end - 1) == '"') {
+            start++;
+            end--;
+        }
+
+        for (int index = start; index < end; index++) {
+            if (buffer.get(index) < 0) {
+                return decode(start, end);
+            }
+        }
+        return ascii(start, end);
+    }
+
+    /**
+     * Parses the field as a plain integer("-7371"), without allocating
+     *
+     * @throws NumberFormatException if the field is not a plain integer of at most 18 digits
+     */
+    public long getLongField(int field) {
+        final int start = fields[field * 2];
+        final int end = fields[field * 2 + 1];
+        int index = start;
+        boolean negative = false;
+        if (index < end && (buffer.get(index) == '-' || buffer.get(index) == '+')) {
+            negative = buffer.get(index) == '-';
+            index++;
+        }
+
+        if (index == end || end - index > 18) {
+            throw new NumberFormatException(ascii(start, end));
+        }
+
+        long value = 0;
+        for (; index < end; index++) {
+            final byte b = buffer.get(index);
+            if (!isDigit(b)) {
+                throw new NumberFormatException(ascii(start, end));
+            }
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses the field as a decimal number, see {@link #nextDouble()}
+     *
+     * @throws NumberFormatException if the field is not a number
+     */
+    public double getDoubleField(int field) {
+        return parseDouble(fields[field * 2], fields[field * 2 + 1]);
+    }
+
+    /**
+     * Returns the value of the field from the dictionary, null if it was not interned yet
+     */
+    public Object getInternedField(NGIValueDictionary dictionary, int field, int type) {
+        return dictionary.get(buffer, fields[field * 2], fields[field * 2 + 1], type);
+    }
+
+    /**
+     * Interns the value decoded from the field, returns the dictionary instance
+     */
+    public Object internField(NGIValueDictionary dictionary, int field, int type, Object value) {
+        return dictionary.put(buffer, fields[field * 2], fields[field * 2 + 1], type, value);
+    }
+
+    /**
+     * Returns the field decoded through the charset
+     */
+    public String getField(int field) {
+        return decode(fields[field * 2], fields[field * 2 + 1]);
+    }
+
+    /**
+     * Returns the field without charset decoding, for number fields
+     */
+    public String getAsciiField(int field) {
+        return ascii(fields[field * 2], fields[field * 2 + 1]);
+    }
+
+    /**
+     * Returns the length in bytes of the current(trimmed) line
+     */
+    public int getLineLength() {
+        return lineEnd - lineStart;
+    }
+
+    /**
+     * Case insensitive ASCII keyword comparison with the current(trimmed) line
+     */
+    public boolean lineEquals(String keyword) {
+        return lineEnd - lineStart == keyword.length() && regionMatches(lineStart, keyword);
+    }
+
+    /**
+     * Case insensitive ASCII prefix comparison with the current(trimmed) line
+     */
+    public boolean lineStartsWith(String keyword) {
+        return lineEnd - lineStart >= keyword.length() && regionMatches(lineStart, keyword);
+    }
+
+    /**
+     * Case insensitive ASCII search in the current(trimmed) line
+     */
+    public boolean lineContains(String keyword) {
+        final int last = lineEnd - keyword.length();
+        for (int index = lineStart; index <= last; index++) {
+            if (regionMatches(index, keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the current line looks like a "x y" coordinate pair
+     */
+    public boolean isCoordinateLine() {
+        if (lineEnd == lineStart) {
+            return false;
+        }
+
+        final byte first = buffer.get(lineStart);
+        if (!(first >= '0' && first <= '9') && first != '-' && first != '+' && first != '.') {
+            return false;
+        }
+
+        for (int index = lineStart + 1; index < lineEnd; index++) {
+            final byte b = buffer.get(index);
+            if (b == ' ' || b == '\t') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void close() {
+        if (mapped) {
+            // unmapped right away, a lingering mapping locks the file on Windows until it is
+            // garbage collected and the NGI/NDA files could not be replaced by NGIWriter
+            if (buffer != null) {
+                NIOUtilities.clean(buffer);
+                buffer = null;
+            }
+            return;
+        }
+
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            inputStream.close();
+        } catch (IOException e) {
+            LOGGER.finer(e.getMessage());
+        }
+    }
+
+    private void addField(int start, int end) {
+        while (start < end && (buffer.get(start) & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (buffer.get(end - 1) & 0xFF) <= ' ') {
+            end--;
+        }
+
+        if (fieldCount * 2 == fields.length) {
+            int[] grown = new int[fields.length * 2];
+            System.arraycopy(fields, 0, grown, 0, fields.length);
+            fields = grown;
+        }
+        fields[fieldCount * 2] = start;
+        fields[fieldCount * 2 + 1] = end;
+        fieldCount++;
+    }
+
+    private String decode(int start, int end) {
+        final int length = end - start;
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+        for (int index = 0; index < length; index++) {
+            bytes[index] = buffer.get(start + index);
+        }
+        return new String(bytes, 0, length, charset);
+    }
+
+    private String ascii(int start, int end) {
+        final int length = end - start;
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        for (int index = 0; index < length; index++) {
+            chars[index] = (char) (buffer.get(start + index) & 0xFF);
+        }
+        return new String(chars, 0, length);
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == ' ' || b == '\t' || b == ',';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private boolean regionMatches(int offset, String keyword) {
+        for (int index = 0; index < keyword.length(); index++) {
+            if (toUpperCase(buffer.get(offset + index)) != toUpperCase((byte) keyword.charAt(index))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int toUpperCase(byte b) {
+        return b >= 'a' && b <= 'z' ? b - 32 : b;
+    }
+
+    private void setLine(int start, int end) {
+        lineOffset = bufferOffset + start;
+        while (start < end && (buffer.get(start) & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (buffer.get(end - 1) & 0xFF) <= ' ') {
+            end--;
+        }
+        lineStart = start;
+        lineEnd = end;
+    }
+
+    // moves the decompressed stream, positioned after the buffered bytes, to the offset
+    private void skipTo(long offset) throws IOException {
+        long streamOffset = bufferOffset + limit;
+        if (offset < streamOffset) {
+            inputStream.close();
+            inputStream = compressedFile.openStream();
+            streamOffset = 0;
+        }
+
+        long remaining = offset - streamOffset;
+        while (remaining > 0) {
+            final long skipped = inputStream.skip(remaining);
+            if (skipped <= 0) {
+                if (inputStream.read() == -1) {
+                    break; // beyond the end
+                }
+                remaining--;
+            } else {
+                remaining -= skipped;
+            }
+        }
+    }
+
+    private void fill() throws IOException {
+        byte[] array = buffer.array();
+
+        // keep the unread bytes of the current line
+        final int remaining = limit - pos;
+        if (pos > 0) {
+            System.arraycopy(array, pos, array, 0, remaining);
+            bufferOffset += pos;
+            pos = 0;
+            limit = remaining;
+        }
+
+        if (limit == array.length) {
+            byte[] grown = new byte[array.length * 2];
+            System.arraycopy(array, 0, grown, 0, limit);
+            buffer = ByteBuffer.wrap(grown);
+            array = grown;
+        }
+
+        int read;
+        if (compressedFile != null) {
+            read = inputStream.read(array, limit, array.length - limit);
+        } else {
+            read = channel.read(ByteBuffer.wrap(array, limit, array.length - limit));
+        }
+        if (read == -1) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+}
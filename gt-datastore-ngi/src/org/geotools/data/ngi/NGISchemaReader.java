@@ -16,19 +16,21 @@
  */
 package org.geotools.data.ngi;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.apache.commons.io.IOUtils;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.util.logging.Logging;
@@ -60,6 +62,13 @@ public class NGISchemaReader extends AbstractNGIReader {
 
     final Map<String, Integer> counts = new TreeMap<String, Integer>();
 
+    final Map<String, NGILayerInfo> layers = new TreeMap<String, NGILayerInfo>();
+
+    // layers in file order
+    final List<NGILayerInfo> catalog = new ArrayList<NGILayerInfo>();
+
+    final NGIIndexFile indexFile;
+
     public Map<String, SimpleFeatureType> getSchemas() {
         return Collections.unmodifiableMap(schemas);
     }
@@ -72,64 +81,255 @@ public class NGISchemaReader extends AbstractNGIReader {
         return Collections.unmodifiableMap(counts);
     }
 
+    public Map<String, NGILayerInfo> getLayers() {
+        return Collections.unmodifiableMap(layers);
+    }
+
+    public NGILayerInfo getLayer(String typeName) {
+        return layers.get(typeName);
+    }
+
     public NGISchemaReader(File ngiFile, File ndaFile, Charset charset,
             CoordinateReferenceSystem crs) {
         this.crs = crs;
-        this.loadSchemas(ngiFile, ndaFile, charset);
+        this.indexFile = new NGIIndexFile(ngiFile, ndaFile, charset);
+        if (!ngiFile.exists()) {
+            return; // new file without layers
+        }
+
+        List<NGILayerInfo> indexed = indexFile.readCatalog(crs);
+        if (indexed == null) {
+            this.loadSchemas(ngiFile, ndaFile, charset);
+            this.writeIndex();
+        } else {
+            for (NGILayerInfo layer : indexed) {
+                layer.schema = createSchema(layer.getName(), layer.geometryType, layer.attributes);
+                if (layer.bounds == null) {
+                    layer.bounds = new ReferencedEnvelope(crs);
+                }
+                addLayer(layer);
+                catalog.add(layer);
+            }
+        }
     }
 
-    private void loadSchemas(File ngiFile, File ndaFile, Charset charset) {
-        BufferedReader ngiReader = null;
-        BufferedReader ndaReader = null;
-        try {
-            ngiReader = new BufferedReader(new InputStreamReader(new FileInputStream(ngiFile),
-                    charset));
-            if (ndaFile.exists()) {
-                ndaReader = new BufferedReader(new InputStreamReader(new FileInputStream(ndaFile),
-                        charset));
+    /**
+     * Returns the per-record offsets and envelopes of the layer, loading them from the sidecar
+     * index if needed.
+     */
+    public NGIRecordIndex getRecordIndex(String typeName) throws IOException {
+        NGILayerInfo layer = layers.get(typeName);
+        if (layer == null) {
+            return null;
+        }
+
+        synchronized (layer) {
+            if (layer.records == null) {
+                layer.records = indexFile.readRecords(layer);
             }
+            return layer.records;
+        }
+    }
 
-            String line = ngiReader.readLine();
-            while (line != null) {
-                String layerName = seekNextLayer(ngiReader);
-                if (layerName != null) {
-                    // schema
-                    SimpleFeatureType schema = createSchema(ngiReader, ndaReader, layerName);
-                    if (schema != null) {
-                        schemas.put(layerName, schema);
-                    }
+    private void writeIndex() {
+        try {
+            indexFile.write(catalog);
+        } catch (IOException e) {
+            // read-only directory: keep the record indexes in memory
+            LOGGER.log(Level.FINE, e.getMessage(), e);
+            return;
+        }
 
-                    // extent
-                    ReferencedEnvelope extent = getBounds(ngiReader);
-                    if (extent == null) {
-                        extent = new ReferencedEnvelope(crs);
-                    }
-                    bounds.put(layerName, extent);
+        // the record indexes are reloaded on demand
+        for (NGILayerInfo layer : catalog) {
+            layer.records = null;
+        }
+    }
 
-                    // feature count
-                    if (ndaReader != null) {
-                        counts.put(layerName, Integer.valueOf(getCount(ndaReader)));
-                    } else {
-                        counts.put(layerName, Integer.valueOf(-1));
+    private void loadSchemas(final File ngiFile, final File ndaFile, final Charset charset) {
+        Map<String, NGILayerInfo> ngiLayers = new LinkedHashMap<String, NGILayerInfo>();
+        Map<String, NDALayer> ndaLayers = new TreeMap<String, NDALayer>(
+                String.CASE_INSENSITIVE_ORDER);
+
+        // the NDA file is scanned on a worker thread while the NGI file is scanned in a single
+        // pass, so each file is read(and decompressed) once
+        ExecutorService executor = NGIExecutors.newExecutor(1);
+        try {
+            Future<Map<String, NDALayer>> ndaFuture = null;
+            if (ndaFile.exists()) {
+                ndaFuture = executor.submit(new Callable<Map<String, NDALayer>>() {
+                    @Override
+                    public Map<String, NDALayer> call() throws Exception {
+                        Map<String, NDALayer> result = new TreeMap<String, NDALayer>(
+                                String.CASE_INSENSITIVE_ORDER);
+                        NGIScanner scanner = new NGIScanner(ndaFile, charset);
+                        try {
+                            scanAttributes(scanner, result);
+                        } finally {
+                            scanner.close();
+                        }
+                        return result;
                     }
+                });
+            }
+
+            try {
+                NGIScanner scanner = new NGIScanner(ngiFile, charset);
+                try {
+                    scanLayers(scanner, ngiLayers);
+                } finally {
+                    scanner.close();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINER, e.getMessage(), e);
+            }
+
+            if (ndaFuture != null) {
+                try {
+                    ndaLayers = NGIExecutors.get(ndaFuture);
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINER, e.getMessage(), e);
                 }
-                line = ngiReader.readLine();
             }
-        } catch (IOException e) {
-            LOGGER.log(Level.FINER, e.getMessage(), e);
         } finally {
-            IOUtils.closeQuietly(ngiReader);
-            IOUtils.closeQuietly(ndaReader);
+            executor.shutdownNow();
+        }
+
+        for (NGILayerInfo layer : ngiLayers.values()) {
+            final String layerName = layer.getName();
+            NDALayer ndaLayer = ndaLayers.get(layerName);
+            if (ndaLayer != null) {
+                layer.ndaLayerOffset = ndaLayer.layerOffset;
+                layer.ndaRecordOffset = ndaLayer.recordOffset;
+                layer.ndaEndOffset = ndaLayer.endOffset;
+                layer.attributes.addAll(ndaLayer.attributes);
+                if (ndaLayer.count != layer.count) {
+                    LOGGER.log(Level.WARNING, layerName + ": NGI record count(" + layer.count
+                            + ") differs from NDA record count(" + ndaLayer.count + ")");
+                }
+
+                final int count = Math.min(ndaLayer.count, layer.count);
+                for (int index = 0; index < count; index++) {
+                    layer.records.setNdaOffset(index, ndaLayer.offsets[index]);
+                }
+            }
+
+            // schema
+            layer.schema = createSchema(layerName, layer.geometryType,
+                    ndaLayer == null ? null : layer.attributes);
+
+            // extent
+            if (layer.bounds == null) {
+                layer.bounds = new ReferencedEnvelope(crs);
+            }
+
+            addLayer(layer);
+            catalog.add(layer);
+        }
+    }
+
+    private void addLayer(NGILayerInfo layer) {
+        final String layerName = layer.getName();
+        layers.put(layerName, layer);
+        if (layer.schema != null) {
+            schemas.put(layerName, layer.schema);
         }
+        bounds.put(layerName, layer.bounds);
+        counts.put(layerName, Integer.valueOf(layer.count));
     }
 
-    private SimpleFeatureType createSchema(BufferedReader ngiReader, BufferedReader ndaReader,
-            String typeName) {
+    /**
+     * Single pass over the NGI file: layer names, byte range, geometry type, BOUND(), record
+     * offsets and record envelopes of each layer
+     */
+    private void scanLayers(NGIScanner scanner, Map<String, NGILayerInfo> ngiLayers)
+            throws IOException {
+        final double[] xy = new double[2];
+        NGILayerInfo layer = null;
+        int record = -1;
+        while (scanner.nextLine()) {
+            if (scanner.lineEquals("$LAYER_NAME")) {
+                final long offset = scanner.getLineOffset();
+                if (layer != null) {
+                    layer.ngiEndOffset = offset;
+                }
+                scanner.nextLine(); // "건물" => 건물
+                layer = new NGILayerInfo(unquote(scanner.getLine()));
+                layer.ngiLayerOffset = offset;
+                layer.records = new NGIRecordIndex();
+                ngiLayers.put(layer.getName(), layer);
+                record = -1;
+            } else if (layer == null) {
+                continue;
+            } else if (scanner.lineStartsWith("$RECORD")) {
+                if (layer.ngiRecordOffset == -1) {
+                    layer.ngiRecordOffset = scanner.getLineOffset();
+                }
+                record = layer.records.add(scanner.getLineOffset());
+                layer.count++;
+            } else if (scanner.lineEquals("<LAYER_END>")) {
+                layer.ngiEndOffset = scanner.getLineOffset();
+                layer = null;
+            } else if (record != -1) {
+                if (scanner.isCoordinateLine()) {
+                    scanner.getCoordinate(xy, 0);
+                    layer.records.expandToInclude(record, xy[0], xy[1]);
+                }
+            } else if (scanner.lineEquals("$GEOMETRIC_METADATA")) {
+                scanner.nextLine();
+                layer.geometryType = getGeometryType(scanner.getAsciiLine());
+            } else if (layer.bounds == null && scanner.lineStartsWith("BOUND(")) {
+                layer.bounds = parseBounds(scanner.getAsciiLine());
+            }
+        }
+
+        if (layer != null) {
+            layer.ngiEndOffset = scanner.position();
+        }
+    }
+
+    /**
+     * Single pass over the NDA file: attribute definitions and record offsets
+     */
+    private void scanAttributes(NGIScanner scanner, Map<String, NDALayer> ndaLayers)
+            throws IOException {
+        NDALayer layer = null;
+        while (scanner.nextLine()) {
+            if (scanner.lineEquals("$LAYER_NAME")) {
+                final long offset = scanner.getLineOffset();
+                if (layer != null) {
+                    layer.endOffset = offset;
+                }
+                scanner.nextLine();
+                layer = new NDALayer();
+                layer.layerOffset = offset;
+                ndaLayers.put(unquote(scanner.getLine()), layer);
+            } else if (layer == null) {
+                continue;
+            } else if (scanner.lineStartsWith("$RECORD")) {
+                if (layer.recordOffset == -1) {
+                    layer.recordOffset = scanner.getLineOffset();
+                }
+                layer.add(scanner.getLineOffset());
+            } else if (scanner.lineEquals("<LAYER_END>")) {
+                layer.endOffset = scanner.getLineOffset();
+                layer = null;
+            } else if (layer.recordOffset == -1 && scanner.lineStartsWith("ATTRIB")) {
+                layer.attributes.add(scanner.getLine());
+            }
+        }
+
+        if (layer != null) {
+            layer.endOffset = scanner.position();
+        }
+    }
+
+    private SimpleFeatureType createSchema(String typeName, Class<?> geometryBinding,
+            List<String> attributes) {
         SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
         builder.setName(typeName);
         builder.setCRS(crs);
 
-        Class<?> geometryBinding = getGeometryType(ngiReader);
         if (geometryBinding != null) {
             if (geometryBinding.isAssignableFrom(Polygon.class)) {
                 geometryBinding = MultiPolygon.class;
@@ -139,164 +339,118 @@ public class NGISchemaReader extends AbstractNGIReader {
 
             builder.add("the_geom", geometryBinding, crs);
 
-            if (ndaReader == null) {
+            if (attributes == null) {
                 return builder.buildFeatureType();
             }
 
-            // seek attributes
-            try {
-                String layerName = seekLayer(ndaReader, typeName);
-                boolean hasAttr = seekPosition(ndaReader, "$ASPATIAL_FIELD_DEF");
-
-                if (layerName != null && hasAttr) {
-                    String line = ndaReader.readLine();
-                    while (line != null) {
-                        if (line.toUpperCase().startsWith("ATTRIB")) {
-                            // ATTRIB("CODENAME",STRING, 20, 0, FALSE)
-                            // ATTRIB(field_name, type, size, decimal, unique)
-                            line = line.substring(7, line.length() - 1);
-                            String[] values = line.split(",", 5);
-                            if (values.length == 5) {
-                                String propertyName = values[0]
-                                        .substring(1, values[0].length() - 1);
-                                final String type = values[1].trim();
-                                if (type.toUpperCase().contains("STRING")) {
-                                    int length = Integer.parseInt(values[2].trim());
-                                    builder.length(length).add(propertyName, String.class);
-                                } else if (type.toUpperCase().contains("DATE")) {
-                                    builder.length(20).add(propertyName, String.class);
-                                } else {
-                                    int decimal = Integer.parseInt(values[3].trim());
-                                    if (decimal == 0) {
-                                        builder.add(propertyName, Integer.class);
-                                    } else {
-                                        builder.add(propertyName, Double.class);
-                                    }
-                                }
-                            }
-                        } else if (line.equalsIgnoreCase("<END>")) {
-                            break;
+            for (String line : attributes) {
+                // ATTRIB("CODENAME",STRING, 20, 0, FALSE)
+                // ATTRIB(field_name, type, size, decimal, unique)
+                line = line.substring(7, line.length() - 1);
+                String[] values = line.split(",", 5);
+                if (values.length == 5) {
+                    String propertyName = values[0].substring(1, values[0].length() - 1);
+                    final String type = values[1].trim();
+                    if (type.toUpperCase().contains("STRING")) {
+                        int length = Integer.parseInt(values[2].trim());
+                        builder.length(length).add(propertyName, String.class);
+                    } else if (type.toUpperCase().contains("DATE")) {
+                        builder.length(20).add(propertyName, String.class);
+                    } else {
+                        int decimal = Integer.parseInt(values[3].trim());
+                        if (decimal == 0) {
+                            builder.add(propertyName, Integer.class);
+                        } else {
+                            builder.add(propertyName, Double.class);
                         }
-                        line = ndaReader.readLine();
                     }
                 }
-            } catch (IOException e) {
-                LOGGER.log(Level.WARNING, e.getMessage(), e);
             }
         } else {
-            System.out.println(typeName + " has null properties");
+            LOGGER.log(Level.WARNING, typeName + " has null properties");
         }
 
         return builder.buildFeatureType();
     }
 
-    private String seekNextLayer(BufferedReader reader) {
-        try {
-            String line = reader.readLine();
-            while (line != null) {
-                if (line.equalsIgnoreCase("$LAYER_NAME")) {
-                    String layerName = reader.readLine(); // "건물" => 건물
-                    return layerName.substring(1, layerName.length() - 1);
-                }
-                line = reader.readLine();
-            }
-        } catch (IOException e) {
-            LOGGER.log(Level.FINER, e.getMessage(), e);
-        }
-        return null;
+    private String unquote(String text) {
+        return text.substring(1, text.length() - 1);
     }
 
-    private int getCount(BufferedReader reader) {
-        int featureCount = 0;
-        try {
-            String line = reader.readLine();
-            while (line != null) {
-                if (line.toUpperCase().startsWith("$RECORD")) {
-                    featureCount++;
-                } else if (line.equalsIgnoreCase("<END>")) {
-                    break;
-                }
-                line = reader.readLine();
-            }
-        } catch (IOException e) {
-            LOGGER.log(Level.FINER, e.getMessage(), e);
-        }
+    private ReferencedEnvelope parseBounds(String line) {
+        // BOUND(150609.210000, 203279.010000, 152265.620000, 205171.560000)
+        line = line.substring(6, line.length() - 1);
+        String[] coordinates = line.split(",", 4);
+        double x1 = parseDouble(coordinates[0]);
+        double y1 = parseDouble(coordinates[1]);
+        double x2 = parseDouble(coordinates[2]);
+        double y2 = parseDouble(coordinates[3]);
 
-        return featureCount;
+        return new ReferencedEnvelope(x1, x2, y1, y2, crs);
     }
 
-    private ReferencedEnvelope getBounds(BufferedReader reader) {
-        try {
-            String line = reader.readLine();
-            while (line != null) {
-                if (line.toUpperCase().startsWith("BOUND(")) {
-                    // BOUND(150609.210000, 203279.010000, 152265.620000, 205171.560000)
-                    line = line.substring(6, line.length() - 1);
-                    String[] coordinates = line.split(",", 4);
-                    double x1 = parseDouble(coordinates[0]);
-                    double y1 = parseDouble(coordinates[1]);
-                    double x2 = parseDouble(coordinates[2]);
-                    double y2 = parseDouble(coordinates[3]);
-
-                    return new ReferencedEnvelope(x1, x2, y1, y2, crs);
-                }
-                line = reader.readLine();
+    private Class<?> getGeometryType(String line) {
+        String shapetypelist = line.toUpperCase();
+        shapetypelist = shapetypelist.substring(5, shapetypelist.length() - 1);
+
+        // MASK(LINESTRING,POLYGON)건물 MASK(LINESTRING,TEXT)도로, MASK(LINESTRING)
+        int pos = shapetypelist.indexOf("POLYGON");
+        String shapetype;
+        if (pos != -1) {
+            shapetype = "POLYGON";
+        } else {
+            pos = shapetypelist.indexOf(",");
+            if (pos > 0) {
+                shapetype = shapetypelist.substring(0, pos);
+            } else {
+                shapetype = shapetypelist;
             }
-        } catch (IOException e) {
-            LOGGER.log(Level.FINER, e.getMessage(), e);
+        }
+
+        if (shapetype.startsWith("TEXT")) {
+            return Point.class;
+        } else if (shapetype.startsWith("POINT")) {
+            return Point.class;
+        } else if (shapetype.startsWith("MULTIPOINT")) {
+            return Point.class;
+        } else if (shapetype.startsWith("LINESTRING")) {
+            return LineString.class;
+        } else if (shapetype.startsWith("MULTILINESTRING")) {
+            return LineString.class;
+        } else if (shapetype.startsWith("MULTILINE")) {
+            return LineString.class;
+        } else if (shapetype.startsWith("NETWORKCHAIN")) {
+            return LineString.class;
+        } else if (shapetype.startsWith("NETWORK CHAIN")) {
+            return LineString.class;
+        } else if (shapetype.startsWith("POLYGON")) {
+            return Polygon.class;
+        } else if (shapetype.startsWith("MULTIPOLYGON")) {
+            return Polygon.class;
         }
         return null;
     }
 
-    private Class<?> getGeometryType(BufferedReader reader) {
-        try {
-            String line = reader.readLine();
-            while (line != null) {
-                if (line.trim().equalsIgnoreCase("$GEOMETRIC_METADATA")) {
-                    String shapetypelist = reader.readLine().toUpperCase();
-                    shapetypelist = shapetypelist.substring(5, shapetypelist.length() - 1);
-
-                    // MASK(LINESTRING,POLYGON)건물 MASK(LINESTRING,TEXT)도로, MASK(LINESTRING)
-                    int pos = shapetypelist.indexOf("POLYGON");
-                    String shapetype;
-                    if (pos != -1) {
-                        shapetype = "POLYGON";
-                    } else {
-                        pos = shapetypelist.indexOf(",");
-                        if (pos > 0) {
-                            shapetype = shapetypelist.substring(0, pos);
-                        } else {
-                            shapetype = shapetypelist;
-                        }
-                    }
+    static final class NDALayer {
+        long layerOffset = -1;
 
-                    if (shapetype.startsWith("TEXT")) {
-                        return Point.class;
-                    } else if (shapetype.startsWith("POINT")) {
-                        return Point.class;
-                    } else if (shapetype.startsWith("MULTIPOINT")) {
-                        return Point.class;
-                    } else if (shapetype.startsWith("LINESTRING")) {
-                        return LineString.class;
-                    } else if (shapetype.startsWith("MULTILINESTRING")) {
-                        return LineString.class;
-                    } else if (shapetype.startsWith("MULTILINE")) {
-                        return LineString.class;
-                    } else if (shapetype.startsWith("NETWORKCHAIN")) {
-                        return LineString.class;
-                    } else if (shapetype.startsWith("NETWORK CHAIN")) {
-                        return LineString.class;
-                    } else if (shapetype.startsWith("POLYGON")) {
-                        return Polygon.class;
-                    } else if (shapetype.startsWith("MULTIPOLYGON")) {
-                        return Polygon.class;
-                    }
-                }
-                line = reader.readLine();
+        long recordOffset = -1;
+
+        long endOffset = -1;
+
+        int count = 0;
+
+        long[] offsets = new long[16];
+
+        final List<String> attributes = new ArrayList<String>();
+
+        void add(long offset) {
+            if (count == offsets.length) {
+                long[] grown = new long[count * 2];
+                System.arraycopy(offsets, 0, grown, 0, count);
+                offsets = grown;
             }
-        } catch (IOException e) {
-            LOGGER.log(Level.FINER, e.getMessage(), e);
+            offsets[count++] = offset;
         }
-        return null;
     }
 }
@@ -0,0 +1,117 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.geotools.geometry.jts.ReferencedEnvelope;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Catalog entry of a map sheet(NGI file) in a directory: extent and record count of each layer.
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGISheet {
+
+    final String name;
+
+    final File ngiFile;
+
+    final Map<String, ReferencedEnvelope> bounds = new TreeMap<String, ReferencedEnvelope>();
+
+    final Map<String, Integer> counts = new TreeMap<String, Integer>();
+
+    // extent calculated from the map index number, used until the sheet is opened
+    ReferencedEnvelope indexBounds;
+
+    // true once the layers of the sheet are known
+    boolean loaded = false;
+
+    public NGISheet(File ngiFile) {
+        this.ngiFile = ngiFile;
+
+        // map sheet number, e.g. 35610069.NGI
+        final String fileName = ngiFile.getName();
+        final int index = fileName.lastIndexOf('.');
+        this.name = index == -1 ? fileName : fileName.substring(0, index);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public File getFile() {
+        return ngiFile;
+    }
+
+    public boolean hasLayer(String typeName) {
+        Integer count = counts.get(typeName);
+        return count != null && count.intValue() > 0;
+    }
+
+    public ReferencedEnvelope getIndexBounds() {
+        return indexBounds;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public ReferencedEnvelope getBounds(String typeName) {
+        return bounds.get(typeName);
+    }
+
+    public int getCount(String typeName) {
+        Integer count = counts.get(typeName);
+        return count == null ? 0 : count.intValue();
+    }
+
+    /**
+     * Returns true if the layer may hold records in the envelope. Layers without BOUND() are
+     * always read, sheets not opened yet are selected by their map index extent.
+     */
+    public boolean intersects(String typeName, Envelope envelope) {
+        if (!loaded) {
+            return envelope == null || indexBounds == null || indexBounds.intersects(envelope);
+        } else if (!hasLayer(typeName)) {
+            return false;
+        }
+
+        ReferencedEnvelope extent = bounds.get(typeName);
+        if (envelope == null || extent == null || extent.isNull()) {
+            return true;
+        }
+        return extent.intersects(envelope);
+    }
+
+    void add(NGILayerInfo layer) {
+        bounds.put(layer.getName(), layer.getBounds());
+        counts.put(layer.getName(), Integer.valueOf(layer.getCount()));
+    }
+
+    @Override
+    public String toString() {
+        return name + counts;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.logging.Logger;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+
+/**
+ * FeatureReader which reads a layer from a list of map sheets one after another. The feature ids
+ * hold the map sheet name, the attributes of sheets with a different layer definition are mapped
+ * by name.
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGISheetFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+    protected static final Logger LOGGER = Logging.getLogger(NGISheetFeatureReader.class);
+
+    private final NGIDirectoryDataStore dataStore;
+
+    private final SimpleFeatureType featureType;
+
+    private final Query query;
+
+    private int startIndex;
+
+    private final Iterator<NGISheet> sheets;
+
+    private NGISheet sheet;
+
+    private FeatureReader<SimpleFeatureType, SimpleFeature> current;
+
+    // attribute index of the sheet feature per attribute, null if the types match
+    private int[] mapping;
+
+    private boolean closed = false;
+
+    public NGISheetFeatureReader(NGIDirectoryDataStore dataStore, SimpleFeatureType featureType,
+            List<NGISheet> sheets, Query query) {
+        this(dataStore, featureType, sheets, query, 0);
+    }
+
+    /**
+     * @param startIndex start index of the query within the first sheet
+     */
+    public NGISheetFeatureReader(NGIDirectoryDataStore dataStore, SimpleFeatureType featureType,
+            List<NGISheet> sheets, Query query, int startIndex) {
+        this.dataStore = dataStore;
+        this.featureType = featureType;
+        this.sheets = sheets.iterator();
+        this.query = query;
+        this.startIndex = startIndex;
+    }
+
+    @Override
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        if (closed) {
+            return false;
+        }
+
+        while (current == null || !current.hasNext()) {
+            closeCurrent();
+            if (!sheets.hasNext()) {
+                return false;
+            }
+
+            sheet = sheets.next();
+            NGIDataStore sheetStore = dataStore.getDataStore(sheet);
+            final String typeName = featureType.getTypeName();
+            if (!sheet.hasLayer(typeName)) {
+                continue; // selected by the map index extent
+            }
+
+            // 건물.35610069.12 -> record 12 of the sheet
+            final String idPrefix = typeName + "." + sheet.getName() + ".";
+            if (query == null) {
+                current = sheetStore.getFeatureReader(typeName, Filter.INCLUDE, null, idPrefix);
+            } else {
+                // the start index applies to the first sheet only
+                Query sheetQuery = new Query(query);
+                sheetQuery.setStartIndex(startIndex > 0 ? Integer.valueOf(startIndex) : null);
+                startIndex = 0;
+                current = sheetStore.getFeatureReader(typeName, query.getFilter(), sheetQuery,
+                        idPrefix);
+            }
+            mapping = createMapping(current.getFeatureType());
+        }
+        return true;
+    }
+
+    @Override
+    public SimpleFeature next() throws IOException, IllegalArgumentException,
+            NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more features: " + featureType.getTypeName());
+        }
+
+        SimpleFeature feature = current.next();
+        Object[] values = new Object[featureType.getAttributeCount()];
+        for (int index = 0; index < values.length; index++) {
+            final int source = mapping == null ? index : mapping[index];
+            values[index] = source == -1 ? null : feature.getAttribute(source);
+        }
+        return SimpleFeatureBuilder.build(featureType, values, getFeatureID(feature.getID()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            closeCurrent();
+        }
+    }
+
+    private void closeCurrent() throws IOException {
+        if (current != null) {
+            try {
+                current.close();
+            } finally {
+                current = null;
+            }
+        }
+    }
+
+    // 건물.12 -> 건물.35610069.12
+    private String getFeatureID(String id) {
+        final String prefix = featureType.getTypeName() + ".";
+        if (id.startsWith(prefix)) {
+            return prefix + sheet.getName() + "." + id.substring(prefix.length());
+        }
+        return prefix + sheet.getName() + "." + id;
+    }
+
+    private int[] createMapping(SimpleFeatureType sheetType) {
+        boolean identity = sheetType.getAttributeCount() == featureType.getAttributeCount();
+        int[] result = new int[featureType.getAttributeCount()];
+        for (int index = 0; index < result.length; index++) {
+            String name = featureType.getDescriptor(index).getLocalName();
+            result[index] = sheetType.indexOf(name);
+            identity &= result[index] == index;
+        }
+        return identity ? null : result;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+/**
+ * In-memory STRtree of the record envelopes of a NGI layer. The tree items are the record
+ * positions in the {@link NGIRecordIndex}, which holds the NGI/NDA byte offsets.
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGISpatialIndex {
+
+    // approximate heap cost of one tree entry: leaf boundable, envelope, Integer and node share
+    static final int ENTRY_SIZE = 120;
+
+    private final STRtree tree;
+
+    private final NGIRecordIndex records;
+
+    private final int size;
+
+    public NGISpatialIndex(NGIRecordIndex records) {
+        this.records = records;
+        this.tree = new STRtree();
+
+        int entries = 0;
+        for (int index = 0; index < records.size(); index++) {
+            if (!records.isEmpty(index)) {
+                tree.insert(records.getEnvelope(index), Integer.valueOf(index));
+                entries++;
+            }
+        }
+        this.size = entries;
+        tree.build();
+    }
+
+    public static long estimateMemory(int count) {
+        return (long) count * ENTRY_SIZE;
+    }
+
+    public long getMemory() {
+        return estimateMemory(size);
+    }
+
+    public NGIRecordIndex getRecords() {
+        return records;
+    }
+
+    /**
+     * Returns the records whose envelope intersects the given envelope, in file order.
+     */
+    public int[] query(Envelope envelope) {
+        @SuppressWarnings("unchecked")
+        List<Integer> hits = tree.query(envelope);
+
+        int[] result = new int[hits.size()];
+        for (int index = 0; index < result.length; index++) {
+            result[index] = hits.get(index).intValue();
+        }
+        // read the candidates sequentially
+        Arrays.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2002-2012, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ngi;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bounded dictionary of decoded NDA values keyed on the raw field bytes, so features of a layer
+ * share the same value instance and repeated values are decoded once.
+ * <p>
+ * The table is a fixed size open addressing hash table of immutable entries. It is shared by the
+ * readers of a layer without locking: a lost concurrent insert only means the value is decoded
+ * again. Values longer than {@link #MAX_LENGTH} bytes are not kept, and once the probe window of
+ * a key is full new values are simply not interned.
+ * </p>
+ *
+ * @author MapPlus, mapplus@gmail.com, http://onspatial.com
+ * @since 2012-10-30
+ * @see
+ *
+ */
+public class NGIValueDictionary {
+
+    static final int DEFAULT_CAPACITY = 4096;
+
+    // longest field, in bytes, that is interned
+    static final int MAX_LENGTH = 64;
+
+    static final int MAX_PROBES = 8;
+
+    private final Entry[] table;
+
+    private final int mask;
+
+    public NGIValueDictionary() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity maximum number of values, rounded up to a power of two
+     */
+    public NGIValueDictionary(int capacity) {
+        int size = 16;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.table = new Entry[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Returns the value decoded from the bytes [start, end) as the given decoder type, null if
+     * not in the dictionary
+     */
+    public Object get(ByteBuffer buffer, int start, int end, int type) {
+        if (end - start > MAX_LENGTH) {
+            return null;
+        }
+
+        final int hash = hash(buffer, start, end, type);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            final Entry entry = table[(hash + probe) & mask];
+            if (entry == null) {
+                return null;
+            } else if (entry.matches(buffer, start, end, type, hash)) {
+                return entry.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the dictionary instance of the value decoded from the bytes [start, end). The value
+     * is added if there is room for it.
+     */
+    public Object put(ByteBuffer buffer, int start, int end, int type, Object value) {
+        if (value == null || end - start > MAX_LENGTH) {
+            return value;
+        }
+
+        final int hash = hash(buffer, start, end, type);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            final int slot = (hash + probe) & mask;
+            final Entry entry = table[slot];
+            if (entry == null) {
+                byte[] key = new byte[end - start];
+                for (int index = 0; index < key.length; index++) {
+                    key[index] = buffer.get(start + index);
+                }
+                table[slot] = new Entry(hash, type, key, value);
+                return value;
+            } else if (entry.matches(buffer, start, end, type, hash)) {
+                return entry.value;
+            }
+        }
+        return value;
+    }
+
+    static int hash(ByteBuffer buffer, int start, int end, int type) {
+        int hash = type;
+        for (int index = start; index < end; index++) {
+            hash = 31 * hash + buffer.get(index);
+        }
+        // spreads the low bits used as slot index
+        return hash ^ (hash >>> 16);
+    }
+
+    static final class Entry {
+        final int hash;
+
+        final int type;
+
+        final byte[] key;
+
+        final Object value;
+
+        Entry(int hash, int type, byte[] key, Object value) {
+            this.hash = hash;
+            this.type = type;
+            this.key = key;
+            this.value = value;
+        }
+
+        boolean matches(ByteBuffer buffer, int start, int end, int type, int hash) {
+            if (this.hash != hash || this.type != type || key.length != end - start) {
+                return false;
+            }
+            for (int index = 0; index < key.length; index++) {
+                if (key[index] != buffer.get(start + index)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -16,42 +16,798 @@
  */
 package org.geotools.data.ngi;
 
-import java.io.FileWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.apache.commons.io.IOUtils;
+import org.geotools.feature.FeatureTypes;
 import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
 
 /**
  * NGI Writer
- * 
+ * <p>
+ * Streams the records of one layer into temporary NGI/NDA record files while the layer extent
+ * and the record count are collected. {@link #close()} appends a new layer section, its BOUND()
+ * followed by the records, to the end of the NGI/NDA files and updates the header BOUND() in
+ * place. A layer that already exists is replaced by writing new NGI/NDA files, swapped with the
+ * originals once both are written. Features are never held in memory.
+ * </p>
+ *
  * @author MapPlus, mapplus@gmail.com, http://onspatial.com
  * @since 2012-10-30
  * @see
- * 
+ *
  */
 public class NGIWriter {
     protected static final Logger LOGGER = Logging.getLogger(NGIWriter.class);
 
-    FileWriter fileWriter;
+    static final int DEFAULT_STRING_LENGTH = 254;
+
+    final File ngiFile;
+
+    final File ndaFile;
+
+    final Charset charset;
+
+    final SimpleFeatureType schema;
+
+    final List<AttributeDescriptor> attributes = new ArrayList<AttributeDescriptor>();
+
+    final Envelope bounds = new Envelope();
+
+    int count = 0;
+
+    File ngiRecordFile;
+
+    File ndaRecordFile;
+
+    NGIOutputBuffer ngiRecords;
+
+    NGIOutputBuffer ndaRecords;
+
+    public NGIWriter(File ngiFile, File ndaFile, Charset charset, SimpleFeatureType schema)
+            throws IOException {
+        this.ngiFile = ngiFile;
+        this.ndaFile = ndaFile;
+        this.charset = charset;
+        this.schema = schema;
 
-    public NGIWriter(FileWriter fileWriter) {
-        this.fileWriter = fileWriter;
+        for (AttributeDescriptor desc : schema.getAttributeDescriptors()) {
+            if (!(desc instanceof GeometryDescriptor)) {
+                attributes.add(desc);
+            }
+        }
+
+        File directory = ngiFile.getAbsoluteFile().getParentFile();
+        this.ngiRecordFile = File.createTempFile("ngi", ".tmp", directory);
+        this.ndaRecordFile = File.createTempFile("nda", ".tmp", directory);
+        this.ngiRecords = new NGIOutputBuffer(ngiRecordFile, charset);
+        this.ndaRecords = new NGIOutputBuffer(ndaRecordFile, charset);
+    }
+
+    public SimpleFeatureType getSchema() {
+        return schema;
+    }
+
+    public int getCount() {
+        return count;
     }
 
-    public void writeRecord(String[] headers) {
-        // TODO :
+    public Envelope getBounds() {
+        return bounds;
     }
 
-    public void write(Object value) {
-        // TODO :
+    public void write(SimpleFeature feature) throws IOException {
+        count++;
+
+        // $RECORD 1
+        ngiRecords.append("$RECORD ").append(count).newLine();
+        Geometry geometry = (Geometry) feature.getDefaultGeometry();
+        if (geometry != null && !geometry.isEmpty()) {
+            bounds.expandToInclude(geometry.getEnvelopeInternal());
+            writeGeometry(geometry);
+        }
+        ngiRecords.appendLine("$END");
+
+        // "UFID000001", "행정지명1", 10, 1.500
+        ndaRecords.append("$RECORD ").append(count).newLine();
+        for (int index = 0; index < attributes.size(); index++) {
+            if (index > 0) {
+                ndaRecords.append(", ");
+            }
+            AttributeDescriptor desc = attributes.get(index);
+            writeValue(feature.getAttribute(desc.getLocalName()));
+        }
+        ndaRecords.newLine();
     }
 
-    public void endRecord() {
-        // TODO :
+    private void writeGeometry(Geometry geometry) throws IOException {
+        if (geometry.getNumGeometries() == 1 && geometry.getGeometryN(0) != geometry) {
+            geometry = geometry.getGeometryN(0);
+        }
 
+        if (geometry instanceof Point) {
+            ngiRecords.appendLine("POINT");
+            writeCoordinates(((Point) geometry).getCoordinateSequence(), false);
+        } else if (geometry instanceof LineString) {
+            ngiRecords.appendLine("LINESTRING");
+            writeCoordinates(((LineString) geometry).getCoordinateSequence(), true);
+        } else if (geometry instanceof Polygon) {
+            ngiRecords.appendLine("POLYGON");
+            writePolygon((Polygon) geometry);
+        } else if (geometry instanceof MultiPoint) {
+            ngiRecords.appendLine("MULTIPOINT");
+            ngiRecords.append(geometry.getNumGeometries()).newLine();
+            for (int index = 0; index < geometry.getNumGeometries(); index++) {
+                Point point = (Point) geometry.getGeometryN(index);
+                writeCoordinates(point.getCoordinateSequence(), false);
+            }
+        } else if (geometry instanceof MultiLineString) {
+            ngiRecords.appendLine("MULTILINESTRING");
+            ngiRecords.append("NUMPARTS ").append(geometry.getNumGeometries()).newLine();
+            for (int index = 0; index < geometry.getNumGeometries(); index++) {
+                LineString lineString = (LineString) geometry.getGeometryN(index);
+                writeCoordinates(lineString.getCoordinateSequence(), true);
+            }
+        } else if (geometry instanceof MultiPolygon) {
+            ngiRecords.appendLine("MULTIPOLYGON");
+            ngiRecords.append("NUMPARTS ").append(geometry.getNumGeometries()).newLine();
+            for (int index = 0; index < geometry.getNumGeometries(); index++) {
+                writePolygon((Polygon) geometry.getGeometryN(index));
+            }
+        } else {
+            LOGGER.log(Level.WARNING, "Unsupported geometry type: " + geometry.getGeometryType());
+        }
     }
 
-    public void close() {
-        // TODO :
+    private void writePolygon(Polygon polygon) throws IOException {
+        final int numofRing = polygon.getNumInteriorRing() + 1;
+        ngiRecords.append("NUMPARTS ").append(numofRing).newLine();
+        for (int ringIndex = 0; ringIndex < numofRing; ringIndex++) {
+            LineString ring = ringIndex == 0 ? polygon.getExteriorRing() : polygon
+                    .getInteriorRingN(ringIndex - 1);
+            // NGI 포맷에서는 폴리곤인 경우에도 시작점과 끝점이 다르다.
+            CoordinateSequence sequence = ring.getCoordinateSequence();
+            writeCoordinates(sequence, sequence.size() - 1, true);
+        }
+    }
+
+    private void writeCoordinates(CoordinateSequence sequence, boolean writeSize)
+            throws IOException {
+        writeCoordinates(sequence, sequence.size(), writeSize);
+    }
+
+    private void writeCoordinates(CoordinateSequence sequence, int size, boolean writeSize)
+            throws IOException {
+        if (writeSize) {
+            ngiRecords.append(size).newLine();
+        }
+
+        // 150609.210000 203279.010000
+        for (int index = 0; index < size; index++) {
+            ngiRecords.appendFixed(sequence.getX(index)).append(' ');
+            ngiRecords.appendFixed(sequence.getY(index)).newLine();
+        }
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value == null) {
+            return;
+        }
+
+        if (value instanceof Number) {
+            if (value instanceof Double || value instanceof Float) {
+                final double number = ((Number) value).doubleValue();
+                if (Double.isNaN(number) || Double.isInfinite(number)) {
+                    return; // written as an empty field, like null
+                }
+                ndaRecords.append(new BigDecimal(value.toString()).toPlainString());
+            } else if (value instanceof BigDecimal) {
+                ndaRecords.append(new BigDecimal(value.toString()).toPlainString());
+            } else {
+                ndaRecords.append(value.toString());
+            }
+        } else {
+            // the NDA format has no escape character and a record is a single line
+            String text = value.toString().replace('"', '\'').replace("\r\n", " ")
+                    .replace('\r', ' ').replace('\n', ' ');
+            ndaRecords.append('"').append(text).append('"');
+        }
+    }
+
+    /**
+     * Writes the layer to the NGI/NDA files and removes the temporary record files
+     */
+    public void close() throws IOException {
+        try {
+            ngiRecords.close();
+            ndaRecords.close();
+            ngiRecords = null;
+            ndaRecords = null;
+
+            FileLayout ngiLayout = scanSections(ngiFile);
+            FileLayout ndaLayout = scanSections(ndaFile);
+
+            final String typeName = schema.getTypeName();
+            Section ngiSection = ngiLayout.getSection(typeName);
+            Section ndaSection = ndaLayout.getSection(typeName);
+            int layerId;
+            if (ngiSection != null) {
+                layerId = ngiSection.id;
+            } else if (ndaSection != null) {
+                layerId = ndaSection.id;
+            } else {
+                layerId = Math.max(ngiLayout.getMaxLayerId(), ndaLayout.getMaxLayerId()) + 1;
+            }
+
+            // the empty layer section written by createSchema is the last one of both files,
+            // it is truncated and the filled layer is appended in its place
+            Envelope extent = getExtent(ngiLayout, typeName);
+            final boolean appendable = ngiLayout.truncate(ngiSection)
+                    && ndaLayout.truncate(ndaSection);
+            if (!appendable || !append(ngiLayout, ndaLayout, layerId, extent)) {
+                rewrite(ngiLayout, ndaLayout, layerId, extent);
+            }
+        } finally {
+            dispose();
+        }
+    }
+
+    /**
+     * Discards the written records without touching the NGI/NDA files
+     */
+    public void dispose() {
+        if (ngiRecords != null) {
+            closeQuietly(ngiRecords);
+            closeQuietly(ndaRecords);
+            ngiRecords = null;
+            ndaRecords = null;
+        }
+        ngiRecordFile.delete();
+        ndaRecordFile.delete();
+    }
+
+    private void closeQuietly(NGIOutputBuffer buffer) {
+        try {
+            buffer.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINER, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the header extent after the layer is written: the BOUND() of the other layers and
+     * the written records. The old header BOUND() is only kept when a layer holding records has
+     * no BOUND() of its own.
+     */
+    private Envelope getExtent(FileLayout layout, String typeName) {
+        Envelope extent = new Envelope(bounds);
+        for (Section section : layout.sections) {
+            if (typeName.equals(section.name)) {
+                continue;
+            } else if (section.bounds != null) {
+                extent.expandToInclude(section.bounds);
+            } else if (section.hasRecords && layout.bound != null) {
+                extent.expandToInclude(layout.bound);
+            }
+        }
+        return extent;
+    }
+
+    /**
+     * Appends the new layer to the end of the existing NGI/NDA files, after removing their empty
+     * trailing section of the layer. Only the header BOUND() is updated in place. The files are
+     * restored on failure.
+     *
+     * @return false if the files must be rewritten: a file is missing or the new header BOUND()
+     *         does not fit in the old one
+     */
+    private boolean append(FileLayout ngiLayout, FileLayout ndaLayout, int layerId,
+            Envelope extent) throws IOException {
+        if (ngiLayout.length == 0 || ndaLayout.length == 0) {
+            return false;
+        }
+
+        byte[] boundLine = null;
+        if (!extent.equals(ngiLayout.bound == null ? new Envelope() : ngiLayout.bound)) {
+            if (ngiLayout.boundOffset == -1 || extent.isNull()) {
+                return false;
+            }
+
+            String text = formatBound(extent);
+            if (text.length() > ngiLayout.boundLength) {
+                return false;
+            }
+
+            // pads the last value to the length of the old line
+            StringBuilder line = new StringBuilder(text);
+            final int padding = text.lastIndexOf(' ') + 1;
+            while (line.length() < ngiLayout.boundLength) {
+                line.insert(padding, ' ');
+            }
+            boundLine = line.toString().getBytes(charset);
+        }
+
+        boolean appended = false;
+        try {
+            ngiLayout.removeTail(ngiFile);
+            ndaLayout.removeTail(ndaFile);
+
+            NGIOutputBuffer out = openAppend(ngiFile, ngiLayout);
+            try {
+                writeNGILayer(out, layerId);
+            } finally {
+                out.close();
+            }
+
+            out = openAppend(ndaFile, ndaLayout);
+            try {
+                writeNDALayer(out, layerId);
+            } finally {
+                out.close();
+            }
+
+            if (boundLine != null) {
+                patch(ngiFile, ngiLayout.boundOffset, boundLine);
+            }
+            appended = true;
+        } finally {
+            if (!appended) {
+                restore(ngiFile, ngiLayout);
+                restore(ndaFile, ndaLayout);
+            }
+        }
+        return true;
+    }
+
+    private NGIOutputBuffer openAppend(File file, FileLayout layout) throws IOException {
+        NGIOutputBuffer out = new NGIOutputBuffer(file, charset, true);
+        if (!layout.endsWithNewLine) {
+            out.newLine();
+        }
+        return out;
+    }
+
+    private void patch(File file, long offset, byte[] bytes) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(offset);
+            raf.write(bytes);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void restore(File file, FileLayout layout) {
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(layout.length);
+                if (layout.tail != null) {
+                    raf.seek(layout.tailOffset);
+                    raf.write(layout.tail);
+                }
+                if (layout.boundOffset != -1) {
+                    raf.seek(layout.boundOffset);
+                    raf.write(layout.boundLine);
+                }
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not restore " + file, e);
+        }
+    }
+
+    /**
+     * Writes new NGI/NDA files holding the other layers of the existing files and the written
+     * layer, then swaps both files. The original files are kept as backup until both new files
+     * are in place and are restored on failure.
+     */
+    private void rewrite(FileLayout ngiLayout, FileLayout ndaLayout, int layerId,
+            Envelope extent) throws IOException {
+        File ngiTemp = new File(ngiFile.getPath() + ".tmp");
+        File ndaTemp = new File(ndaFile.getPath() + ".tmp");
+        try {
+            NGIOutputBuffer out = new NGIOutputBuffer(ngiTemp, charset);
+            try {
+                out.appendLine("<HEADER>");
+                out.appendLine("VERSION(2)");
+                out.appendLine("DIM(2)");
+                if (!extent.isNull()) {
+                    out.appendLine(formatBound(extent));
+                }
+                out.appendLine("<END>");
+                copySections(ngiFile, ngiLayout, out);
+                writeNGILayer(out, layerId);
+            } finally {
+                out.close();
+            }
+
+            out = new NGIOutputBuffer(ndaTemp, charset);
+            try {
+                out.appendLine("<HEADER>");
+                out.appendLine("VERSION(2)");
+                out.appendLine("<END>");
+                copySections(ndaFile, ndaLayout, out);
+                writeNDALayer(out, layerId);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            ngiTemp.delete();
+            ndaTemp.delete();
+            throw e;
+        }
+
+        replace(new File[] { ngiTemp, ndaTemp }, new File[] { ngiFile, ndaFile });
+    }
+
+    private void writeNGILayer(NGIOutputBuffer out, int layerId) throws IOException {
+        writeLayerStart(out, layerId);
+        out.appendLine("$GEOMETRIC_METADATA");
+        out.appendLine(getMask());
+        out.appendLine("DIM(2)");
+        if (!bounds.isNull()) {
+            out.appendLine(formatBound(bounds));
+        }
+        out.appendLine("$END");
+        out.appendLine("<DATA>");
+        copyRecords(ngiRecordFile, out);
+        out.appendLine("<LAYER_END>");
+    }
+
+    private void writeNDALayer(NGIOutputBuffer out, int layerId) throws IOException {
+        writeLayerStart(out, layerId);
+        out.appendLine("$ASPATIAL_FIELD_DEF");
+        for (AttributeDescriptor desc : attributes) {
+            out.appendLine(getAttributeDefinition(desc));
+        }
+        out.appendLine("<END>");
+        out.appendLine("<DATA>");
+        copyRecords(ndaRecordFile, out);
+        out.appendLine("<LAYER_END>");
+    }
+
+    private void writeLayerStart(NGIOutputBuffer out, int layerId) throws IOException {
+        out.appendLine("<LAYER_START>");
+        out.appendLine("$LAYER_ID");
+        out.append(layerId).newLine();
+        out.appendLine("$END");
+        out.appendLine("$LAYER_NAME");
+        out.append('"').append(schema.getTypeName()).append('"').newLine();
+        out.appendLine("$END");
+    }
+
+    private String formatBound(Envelope extent) {
+        // BOUND(150609.210000, 203279.010000, 152265.620000, 205171.560000)
+        return "BOUND(" + formatFixed(extent.getMinX()) + ", " + formatFixed(extent.getMinY())
+                + ", " + formatFixed(extent.getMaxX()) + ", " + formatFixed(extent.getMaxY())
+                + ")";
+    }
+
+    private String formatFixed(double value) {
+        return new BigDecimal(value).setScale(NGIOutputBuffer.SCALE, BigDecimal.ROUND_HALF_UP)
+                .toPlainString();
+    }
+
+    private String getMask() {
+        GeometryDescriptor geometryDescriptor = schema.getGeometryDescriptor();
+        Class<?> binding = geometryDescriptor == null ? null : geometryDescriptor.getType()
+                .getBinding();
+
+        if (binding == null) {
+            return "MASK(POINT)";
+        } else if (Polygon.class.isAssignableFrom(binding)
+                || MultiPolygon.class.isAssignableFrom(binding)) {
+            return "MASK(POLYGON)";
+        } else if (LineString.class.isAssignableFrom(binding)
+                || MultiLineString.class.isAssignableFrom(binding)) {
+            return "MASK(LINESTRING)";
+        } else if (MultiPoint.class.isAssignableFrom(binding)) {
+            return "MASK(MULTIPOINT)";
+        }
+        return "MASK(POINT)";
+    }
+
+    private String getAttributeDefinition(AttributeDescriptor desc) {
+        // ATTRIB("CODENAME",STRING, 20, 0, FALSE)
+        final String name = "ATTRIB(\"" + desc.getLocalName() + "\", ";
+        Class<?> binding = desc.getType().getBinding();
+        if (Long.class.isAssignableFrom(binding)) {
+            return name + "NUMBER, 19, 0, FALSE)";
+        } else if (Integer.class.isAssignableFrom(binding) || Short.class.isAssignableFrom(binding)
+                || Byte.class.isAssignableFrom(binding)) {
+            return name + "NUMBER, 10, 0, FALSE)";
+        } else if (Number.class.isAssignableFrom(binding)) {
+            return name + "NUMBER, 20, 6, FALSE)";
+        }
+
+        int length = FeatureTypes.getFieldLength(desc);
+        if (length <= 0) {
+            length = DEFAULT_STRING_LENGTH;
+        }
+        return name + "STRING, " + length + ", 0, FALSE)";
+    }
+
+    private void copyRecords(File recordFile, NGIOutputBuffer out) throws IOException {
+        FileInputStream fis = new FileInputStream(recordFile);
+        try {
+            FileChannel channel = fis.getChannel();
+            out.transferFrom(channel, 0, channel.size());
+        } finally {
+            IOUtils.closeQuietly(fis);
+        }
+    }
+
+    /**
+     * Copies the layer sections of the existing file, except the section of the written layer
+     */
+    private void copySections(File file, FileLayout layout, NGIOutputBuffer out)
+            throws IOException {
+        if (layout.sections.isEmpty()) {
+            return;
+        }
+
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            FileChannel channel = fis.getChannel();
+            long position = layout.dataOffset;
+            for (Section section : layout.sections) {
+                if (schema.getTypeName().equals(section.name)) {
+                    // replaced by the written layer
+                    out.transferFrom(channel, position, section.start - position);
+                    position = section.end;
+                }
+            }
+            out.transferFrom(channel, position, channel.size() - position);
+        } finally {
+            IOUtils.closeQuietly(fis);
+        }
+    }
+
+    /**
+     * Locates the header BOUND() and the layer sections(<LAYER_START> ... <LAYER_END>) of an
+     * existing file. The file is streamed, a mapping would lock it on Windows.
+     */
+    private FileLayout scanSections(File file) throws IOException {
+        FileLayout layout = new FileLayout();
+        if (!file.exists() || file.length() == 0) {
+            return layout;
+        }
+
+        long dataOffset = -1;
+        NGIScanner scanner = new NGIScanner(file, charset, false);
+        try {
+            Section section = null;
+            while (scanner.nextLine()) {
+                if (scanner.lineEquals("<LAYER_START>")) {
+                    section = new Section();
+                    section.start = scanner.getLineOffset();
+                    if (dataOffset == -1) {
+                        dataOffset = section.start;
+                    }
+                } else if (section != null && scanner.lineEquals("<LAYER_END>")) {
+                    section.end = scanner.position();
+                    layout.sections.add(section);
+                    section = null;
+                } else if (section != null) {
+                    if (scanner.lineStartsWith("$RECORD")) {
+                        section.hasRecords = true;
+                    } else if (section.hasRecords) {
+                        continue;
+                    } else if (scanner.lineEquals("$LAYER_ID")) {
+                        scanner.nextLine();
+                        section.id = scanner.getInt();
+                    } else if (scanner.lineEquals("$LAYER_NAME")) {
+                        scanner.nextLine();
+                        String name = scanner.getLine();
+                        section.name = name.substring(1, name.length() - 1);
+                    } else if (section.bounds == null && scanner.lineStartsWith("BOUND(")) {
+                        section.bounds = parseBound(scanner.getAsciiLine());
+                    }
+                } else if (dataOffset == -1 && layout.bound == null
+                        && scanner.lineStartsWith("BOUND(")) {
+                    String line = scanner.getAsciiLine();
+                    layout.bound = parseBound(line);
+                    layout.boundOffset = scanner.getLineOffset();
+                    layout.boundLength = line.length();
+                    layout.boundLine = line.getBytes(charset);
+                }
+            }
+
+            if (section != null) {
+                // missing <LAYER_END>
+                section.end = scanner.position();
+                layout.sections.add(section);
+            }
+        } finally {
+            scanner.close();
+        }
+
+        layout.length = file.length();
+        layout.dataOffset = dataOffset == -1 ? layout.length : dataOffset;
+        layout.endsWithNewLine = endsWithNewLine(file, layout.length);
+        return layout;
+    }
+
+    private Envelope parseBound(String line) {
+        String[] values = line.substring(6, line.length() - 1).split(",", 4);
+        return new Envelope(Double.parseDouble(values[0].trim()),
+                Double.parseDouble(values[2].trim()), Double.parseDouble(values[1].trim()),
+                Double.parseDouble(values[3].trim()));
+    }
+
+    private boolean endsWithNewLine(File file, long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(length - 1);
+            return raf.read() == '\n';
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Moves the temporary files in place of the files. The files are renamed to backup files
+     * first and are restored if any of the temporary files could not be moved.
+     */
+    private void replace(File[] tempFiles, File[] files) throws IOException {
+        File[] backupFiles = new File[files.length];
+        int moved = 0;
+        try {
+            for (int index = 0; index < files.length; index++) {
+                if (files[index].exists()) {
+                    File backupFile = new File(files[index].getPath() + ".bak");
+                    backupFile.delete();
+                    if (!files[index].renameTo(backupFile)) {
+                        throw new IOException("Could not replace " + files[index]);
+                    }
+                    backupFiles[index] = backupFile;
+                }
+            }
+
+            for (; moved < files.length; moved++) {
+                if (!tempFiles[moved].renameTo(files[moved])) {
+                    throw new IOException("Could not create " + files[moved]);
+                }
+            }
+        } catch (IOException e) {
+            for (int index = 0; index < files.length; index++) {
+                if (index < moved) {
+                    files[index].delete();
+                }
+                if (backupFiles[index] != null && !backupFiles[index].renameTo(files[index])) {
+                    LOGGER.log(Level.WARNING, "Could not restore " + files[index] + " from "
+                            + backupFiles[index]);
+                }
+                tempFiles[index].delete();
+            }
+            throw e;
+        }
+
+        for (File backupFile : backupFiles) {
+            if (backupFile != null && !backupFile.delete()) {
+                LOGGER.log(Level.WARNING, "Could not delete " + backupFile);
+            }
+        }
+    }
+
+    static final class FileLayout {
+        final List<Section> sections = new ArrayList<Section>();
+
+        // file length, 0 if the file does not exist
+        long length = 0;
+
+        // offset of the first layer section
+        long dataOffset = 0;
+
+        boolean endsWithNewLine = true;
+
+        // header BOUND(), null if missing
+        Envelope bound;
+
+        long boundOffset = -1;
+
+        int boundLength;
+
+        byte[] boundLine;
+
+        // trailing empty section replaced by the appended layer, null if none
+        long tailOffset = -1;
+
+        byte[] tail;
+
+        /**
+         * Marks the section to be replaced by the appended layer
+         *
+         * @return false if the section holds records or is not the last section of the file
+         */
+        boolean truncate(Section section) {
+            if (section == null) {
+                return true;
+            } else if (section.hasRecords || section.end != length
+                    || sections.get(sections.size() - 1) != section) {
+                return false;
+            }
+            tailOffset = section.start;
+            return true;
+        }
+
+        /**
+         * Cuts the trailing section off the file, its bytes are kept to restore the file
+         */
+        void removeTail(File file) throws IOException {
+            if (tailOffset == -1) {
+                return;
+            }
+
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                byte[] bytes = new byte[(int) (length - tailOffset)];
+                raf.seek(tailOffset);
+                raf.readFully(bytes);
+                tail = bytes;
+                raf.setLength(tailOffset);
+            } finally {
+                raf.close();
+            }
+            endsWithNewLine = true;
+        }
+
+        Section getSection(String name) {
+            for (Section section : sections) {
+                if (name.equals(section.name)) {
+                    return section;
+                }
+            }
+            return null;
+        }
+
+        int getMaxLayerId() {
+            int maxLayerId = 0;
+            for (Section section : sections) {
+                maxLayerId = Math.max(maxLayerId, section.id);
+            }
+            return maxLayerId;
+        }
+    }
+
+    static final class Section {
+        String name;
+
+        int id;
+
+        long start = -1;
+
+        long end = -1;
+
+        // BOUND() of the layer metadata, null if missing
+        Envelope bounds;
+
+        boolean hasRecords = false;
     }
 }
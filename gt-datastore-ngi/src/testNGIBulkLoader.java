@@ -0,0 +1,133 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.Query;
+import org.geotools.data.h2.H2DataStoreFactory;
+import org.geotools.data.h2.H2DialectPrepared;
+import org.geotools.data.ngi.NGIBulkLoader;
+import org.geotools.data.ngi.NGIDataStore;
+import org.geotools.data.ngi.NGIDataStoreFactory;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.jdbc.JDBCDataStore;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.sort.SortBy;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+public class testNGIBulkLoader {
+
+    public static void main(String[] args) throws IOException {
+        String ngiFile = "C:/Spatial_Program/ArcGIS_Extension/NGI_SampleDataset/ASC5/35610069.NGI";
+        if (args.length > 0) {
+            ngiFile = args[0];
+        }
+
+        Map<String, Serializable> params = new HashMap<String, Serializable>();
+        params.put(NGIDataStoreFactory.PARAM_FILE.key, DataUtilities.fileToURL(new File(ngiFile)));
+        params.put(NGIDataStoreFactory.PARAM_SRS.key, "EPSG:2097");
+        params.put(NGIDataStoreFactory.PARAM_CHARSET.key, "EUC-KR");
+
+        NGIDataStoreFactory factory = new NGIDataStoreFactory();
+        NGIDataStore source = (NGIDataStore) factory.createDataStore(params);
+
+        // embedded H2 database in the temp folder
+        File database = new File(System.getProperty("java.io.tmpdir"), "ngi_bulk_"
+                + System.currentTimeMillis());
+        Map<String, Serializable> h2Params = new HashMap<String, Serializable>();
+        h2Params.put(H2DataStoreFactory.DBTYPE.key, "h2");
+        h2Params.put(H2DataStoreFactory.DATABASE.key, database.getAbsolutePath());
+
+        JDBCDataStore target = new H2DataStoreFactory().createDataStore(h2Params);
+        // NGIBulkLoader binds the geometries through a prepared statement dialect
+        target.setSQLDialect(new H2DialectPrepared(target));
+
+        try {
+            NGIBulkLoader loader = new NGIBulkLoader(source, target);
+            loader.setBatchSize(100);
+            loader.setCommitSize(500);
+
+            for (String typeName : source.getTypeNames()) {
+                SimpleFeatureSource sfs = source.getFeatureSource(typeName);
+                final int expected = sfs.getCount(Query.ALL);
+
+                int loaded = loader.load(typeName);
+                check(loaded == expected, typeName + ": loaded " + loaded + ", expected "
+                        + expected);
+
+                SimpleFeatureSource table = target.getFeatureSource(typeName);
+                int rows = table.getCount(Query.ALL);
+                check(rows == expected, typeName + ": " + rows + " rows, expected " + expected);
+
+                compareFeatures(sfs, table);
+                System.out.println(typeName + ": " + rows);
+            }
+        } finally {
+            target.dispose();
+            source.dispose();
+        }
+
+        System.out.println("완료");
+    }
+
+    static void compareFeatures(SimpleFeatureSource sfs, SimpleFeatureSource table)
+            throws IOException {
+        // rows are inserted in the order of the NGI records
+        Query query = new Query(table.getSchema().getTypeName());
+        query.setSortBy(new SortBy[] { SortBy.NATURAL_ORDER });
+
+        SimpleFeatureIterator featureIter = null;
+        SimpleFeatureIterator rowIter = null;
+        try {
+            featureIter = sfs.getFeatures().features();
+            rowIter = table.getFeatures(query).features();
+
+            int row = 0;
+            while (featureIter.hasNext()) {
+                check(rowIter.hasNext(), "missing row " + row);
+                SimpleFeature feature = featureIter.next();
+                SimpleFeature loaded = rowIter.next();
+
+                for (AttributeDescriptor desc : sfs.getSchema().getAttributeDescriptors()) {
+                    final String name = desc.getLocalName();
+                    Object expected = feature.getAttribute(name);
+                    Object actual = loaded.getAttribute(name);
+                    check(equals(desc, expected, actual), "row " + row + ", " + name + ": "
+                            + actual + ", expected " + expected);
+                }
+                row++;
+            }
+            check(!rowIter.hasNext(), "more rows than features");
+        } finally {
+            if (featureIter != null) {
+                featureIter.close();
+            }
+            if (rowIter != null) {
+                rowIter.close();
+            }
+        }
+    }
+
+    static boolean equals(AttributeDescriptor desc, Object expected, Object actual) {
+        if (expected == null || actual == null) {
+            return expected == actual;
+        } else if (desc instanceof GeometryDescriptor) {
+            return ((Geometry) expected).equalsExact((Geometry) actual);
+        } else if (expected instanceof Number && actual instanceof Number) {
+            return ((Number) expected).doubleValue() == ((Number) actual).doubleValue();
+        }
+        return expected.equals(actual);
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}